@@ -1,20 +1,18 @@
 package codegen_example.codegen;
 
-import java.util.Map;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.ArrayList;
 
-import java.io.File;
 import java.io.FileOutputStream;
-import java.io.BufferedOutputStream;
 import java.io.IOException;
 
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.tree.MethodNode;
 import static org.objectweb.asm.Opcodes.*;
 
 import codegen_example.syntax.*;
+import codegen_example.flat.FlatProgram;
 
 // Helpful resources:
 // -Basics on Java Bytecode:
@@ -27,22 +25,71 @@ public class CodeGenerator {
     // ---BEGIN INSTANCE VARIABLES---
     public final String outputClassName;
     public final String outputMethodName;
+    public final boolean peephole;
+    public final int classVersion; // one of ASM's V* constants, e.g. V17
 
-    private final ClassWriter writer;
-    private final Map<Variable, VariableEntry> variables;
-    private int nextIndex;
-    private final MethodVisitor methodVisitor;
+    // A generator can be reused for any number of programs, as long as
+    // reset is called in between.  The symbol table lives in arrays which
+    // only ever grow, so once a generator has seen a program with as many
+    // variables, declaring one allocates nothing.  ASM offers no way to
+    // reset a ClassWriter, so that is the one thing which is still
+    // allocated per program.
+    private ClassWriter writer;
+    private int nextIndex; // local slots in use, which is also how many variables
+    private Variable[] slotVariables; // by slot; null for flat programs
+    private Type[] slotTypes; // by slot
+    private int[] buckets; // open-addressed hash of slotVariables: slot + 1, or 0 if empty
+    private int[] flatSlots; // by name index: slot, or -1 if not declared yet
+    private MethodVisitor methodVisitor;
+    private boolean finished;
+
+    // with peephole on, the method is built up in memory so that
+    // PeepholeOptimizer can rewrite it before it's written out
+    private MethodNode methodNode;
+    private PeepholeReport peepholeReport;
     // ---END INSTANCE VARIABLES
     
     public CodeGenerator(final String outputClassName,
                          final String outputMethodName) {
+        this(outputClassName, outputMethodName, false);
+    } // CodeGenerator
+
+    public CodeGenerator(final String outputClassName,
+                         final String outputMethodName,
+                         final boolean peephole) {
+        this(outputClassName, outputMethodName, peephole, V1_7);
+    } // CodeGenerator
+
+    public CodeGenerator(final String outputClassName,
+                         final String outputMethodName,
+                         final boolean peephole,
+                         final int classVersion) {
         this.outputClassName = outputClassName;
         this.outputMethodName = outputMethodName;
+        this.peephole = peephole;
+        this.classVersion = classVersion;
+        slotVariables = new Variable[INITIAL_VARIABLES];
+        slotTypes = new Type[INITIAL_VARIABLES];
+        buckets = new int[INITIAL_VARIABLES * 2];
+        flatSlots = new int[INITIAL_VARIABLES];
+        start();
+    } // CodeGenerator
+
+    // prepares this generator for another program, discarding anything
+    // written so far
+    public void reset() {
+        Arrays.fill(buckets, 0);
+        Arrays.fill(slotVariables, 0, nextIndex, null);
+        start();
+    } // reset
+
+    private void start() {
         writer = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
-        variables = new HashMap<Variable, VariableEntry>();
         nextIndex = 0;
+        finished = false;
+        peepholeReport = null;
         
-        writer.visit(V1_7, // Java 1.7
+        writer.visit(classVersion, // Java 1.7 unless asked otherwise
                      ACC_PUBLIC, // public
                      outputClassName, // class name
                      null, // signature (null means not generic)
@@ -84,34 +131,90 @@ public class CodeGenerator {
         main.visitMaxs(0, 0);
         // ---END MAIN DEFINITION---
 
-        methodVisitor = writer.visitMethod(ACC_PUBLIC | ACC_STATIC,
-                                           outputMethodName,
-                                           "()V",
-                                           null,
-                                           null);
+        if (peephole) {
+            methodNode = new MethodNode(ASM9,
+                                        ACC_PUBLIC | ACC_STATIC,
+                                        outputMethodName,
+                                        "()V",
+                                        null,
+                                        null);
+            methodVisitor = methodNode;
+        } else {
+            methodNode = null;
+            methodVisitor = writer.visitMethod(ACC_PUBLIC | ACC_STATIC,
+                                               outputMethodName,
+                                               "()V",
+                                               null,
+                                               null);
+        }
         methodVisitor.visitCode();
-    } // CodeGenerator
+    } // start
 
-    private VariableEntry getEntryFor(final Variable variable) throws CodeGeneratorException {
-        final VariableEntry entry = variables.get(variable);
-        if (entry != null) {
-            return entry;
+    private void checkNotFinished() throws CodeGeneratorException {
+        if (finished) {
+            throw new CodeGeneratorException("program already written; call reset first");
+        }
+    } // checkNotFinished
+
+    // ---BEGIN SYMBOL TABLE---
+    private static final int INITIAL_VARIABLES = 16;
+
+    // bucket holding variable, or the empty bucket where it would go
+    private int bucketFor(final Variable variable) {
+        final int mask = buckets.length - 1;
+        int bucket = variable.hashCode() & mask;
+        while (buckets[bucket] != 0 &&
+               !slotVariables[buckets[bucket] - 1].equals(variable)) {
+            bucket = (bucket + 1) & mask;
+        }
+        return bucket;
+    } // bucketFor
+
+    // takes the next local slot; variable is null for flat programs, which
+    // never look variables up by object
+    private int newSlot(final Variable variable, final Type type) {
+        if (nextIndex == slotTypes.length) {
+            slotVariables = Arrays.copyOf(slotVariables, nextIndex * 2);
+            slotTypes = Arrays.copyOf(slotTypes, nextIndex * 2);
+        }
+        final int slot = nextIndex++;
+        slotVariables[slot] = variable;
+        slotTypes[slot] = type;
+        if (variable != null) {
+            if (nextIndex * 2 > buckets.length) {
+                // keep the table at most half full
+                buckets = new int[buckets.length * 2];
+                for (int rehashed = 0; rehashed < nextIndex; rehashed++) {
+                    if (slotVariables[rehashed] != null) {
+                        buckets[bucketFor(slotVariables[rehashed])] = rehashed + 1;
+                    }
+                }
+            } else {
+                buckets[bucketFor(variable)] = slot + 1;
+            }
+        }
+        return slot;
+    } // newSlot
+
+    private int getSlotFor(final Variable variable) throws CodeGeneratorException {
+        final int slot = buckets[bucketFor(variable)] - 1;
+        if (slot >= 0) {
+            return slot;
         } else {
             // should be caught by typechecker
             throw new CodeGeneratorException("no such variable declared: " + variable);
         }
-    } // getEntryFor
+    } // getSlotFor
 
-    private VariableEntry addEntry(final Variable variable, final Type type) throws CodeGeneratorException {
-        if (variables.containsKey(variable)) {
+    private int addSlot(final Variable variable, final Type type) throws CodeGeneratorException {
+        if (buckets[bucketFor(variable)] != 0) {
             // should be caught by typechecker
             throw new CodeGeneratorException("Variable already in scope: " + variable);
         } else {
-            final VariableEntry entry = new VariableEntry(variable, type, nextIndex++);
-            variables.put(variable, entry);
-            return entry;
+            return newSlot(variable, type);
         }
-    } // addEntry
+    } // addSlot
+    // ---END SYMBOL TABLE---
 
     private void writeIntLiteral(final int value) {
         switch (value) {
@@ -137,8 +240,15 @@ public class CodeGenerator {
             methodVisitor.visitInsn(ICONST_5);
             break;
         default:
-            // writer.newConst(Integer.valueOf(value))
-            methodVisitor.visitLdcInsn(Integer.valueOf(value));
+            if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                methodVisitor.visitIntInsn(BIPUSH, value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                methodVisitor.visitIntInsn(SIPUSH, value);
+            } else {
+                // only constants which don't fit in an instruction go in
+                // the constant pool, so this is the only place we box
+                methodVisitor.visitLdcInsn(Integer.valueOf(value));
+            }
         }
     } // writeIntLiteral
 
@@ -159,7 +269,7 @@ public class CodeGenerator {
     
     private void writeExpression(final Exp exp) throws CodeGeneratorException {
         if (exp instanceof VariableExp) {
-            getEntryFor(((VariableExp)exp).variable).load(methodVisitor);
+            methodVisitor.visitVarInsn(ILOAD, getSlotFor(((VariableExp)exp).variable));
         } else if (exp instanceof IntegerLiteralExp) {
             writeIntLiteral(((IntegerLiteralExp)exp).value);
         } else if (exp instanceof BooleanLiteralExp) {
@@ -176,41 +286,48 @@ public class CodeGenerator {
         }
     } // writeExpression
 
-    public void writePrint(final Variable variable) throws CodeGeneratorException {
-        final VariableEntry entry = getEntryFor(variable);
+    // prints the variable in the given local slot
+    private void writePrintln(final int slot, final Type type) throws CodeGeneratorException {
         final String descriptor;
-        if (entry.type instanceof IntType) {
+        if (type instanceof IntType) {
             descriptor = "(I)V";
-        } else if (entry.type instanceof BoolType) {
+        } else if (type instanceof BoolType) {
             descriptor = "(Z)V";
         } else {
             assert(false);
-            throw new CodeGeneratorException("Unrecognized type; " + entry.type);
+            throw new CodeGeneratorException("Unrecognized type; " + type);
         }
 
         methodVisitor.visitFieldInsn(GETSTATIC,
                                      "java/lang/System",
                                      "out",
                                      "Ljava/io/PrintStream;");
-        entry.load(methodVisitor);
+        methodVisitor.visitVarInsn(ILOAD, slot);
         methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
                                       "java/io/PrintStream",
                                       "println",
                                       descriptor,
                                       false);
+    } // writePrintln
+
+    public void writePrint(final Variable variable) throws CodeGeneratorException {
+        checkNotFinished();
+        final int slot = getSlotFor(variable);
+        writePrintln(slot, slotTypes[slot]);
     } // writePrint
     
     public void writeStatement(final Stmt stmt) throws CodeGeneratorException {
+        checkNotFinished();
         if (stmt instanceof VariableDeclarationStmt) {
             final VariableDeclarationStmt asDec = (VariableDeclarationStmt)stmt;
-            final VariableEntry entry = addEntry(asDec.variable, asDec.type);
+            final int slot = addSlot(asDec.variable, asDec.type);
             writeExpression(asDec.exp);
-            entry.store(methodVisitor);
+            methodVisitor.visitVarInsn(ISTORE, slot);
         } else if (stmt instanceof AssignStmt) {
             final AssignStmt asAssign = (AssignStmt)stmt;
-            final VariableEntry entry = getEntryFor(asAssign.variable);
+            final int slot = getSlotFor(asAssign.variable);
             writeExpression(asAssign.exp);
-            entry.store(methodVisitor);
+            methodVisitor.visitVarInsn(ISTORE, slot);
         } else if (stmt instanceof PrintStmt) {
             writePrint(((PrintStmt)stmt).variable);
         } else {
@@ -219,17 +336,225 @@ public class CodeGenerator {
         }
     } // writeStatement
     
-    public void writeProgram(final Program program) throws CodeGeneratorException, IOException {
+    // null unless peephole is on and a program has been written
+    public PeepholeReport getPeepholeReport() {
+        return peepholeReport;
+    } // getPeepholeReport
+
+    // returns the contents of the class file, without writing it anywhere
+    public byte[] writeProgramToBytes(final Program program) throws CodeGeneratorException {
+        checkNotFinished();
         for (final Stmt statement : program.statements) {
             writeStatement(statement);
         }
+        return finish();
+    } // writeProgramToBytes
+
+    // ---BEGIN PARTIAL EVALUATION---
+    // a string constant can be at most 65535 bytes of modified UTF-8, and
+    // output is all ASCII
+    private static final int MAX_CONSTANT_LENGTH = 65535;
+
+    // Prints output, which was computed at compile time.  The lines are
+    // separated with \n, so they're switched to the platform's separator
+    // at run time, as println would do.
+    private void writeConstantOutput(final String output) {
+        for (int start = 0; start < output.length(); start += MAX_CONSTANT_LENGTH) {
+            final int end = Math.min(output.length(), start + MAX_CONSTANT_LENGTH);
+            methodVisitor.visitFieldInsn(GETSTATIC,
+                                         "java/lang/System",
+                                         "out",
+                                         "Ljava/io/PrintStream;");
+            methodVisitor.visitLdcInsn(output.substring(start, end));
+            methodVisitor.visitLdcInsn("\n");
+            methodVisitor.visitMethodInsn(INVOKESTATIC,
+                                          "java/lang/System",
+                                          "lineSeparator",
+                                          "()Ljava/lang/String;",
+                                          false);
+            methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+                                          "java/lang/String",
+                                          "replace",
+                                          "(Ljava/lang/CharSequence;Ljava/lang/CharSequence;)Ljava/lang/String;",
+                                          false);
+            methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+                                          "java/io/PrintStream",
+                                          "print",
+                                          "(Ljava/lang/String;)V",
+                                          false);
+        }
+    } // writeConstantOutput
+
+    // Like writeProgramToBytes, but runs as much of the program as possible
+    // at compile time (see PartialEvaluator).  A program which can be
+    // evaluated completely compiles to printing a constant.  Otherwise, the
+    // output up to the first statement which couldn't be evaluated is
+    // printed, the variables are set to what they were at that point, and
+    // the rest of the program is compiled normally.
+    public byte[] writeEvaluatedProgramToBytes(final Program program) throws CodeGeneratorException {
+        checkNotFinished();
+        final PartialEvaluator evaluator = new PartialEvaluator(program);
+        writeConstantOutput(evaluator.output);
+        final List<Stmt> statements = program.statements;
+        if (evaluator.staticStatements < statements.size()) {
+            for (final Variable variable : evaluator.declaredVariables()) {
+                final int slot = addSlot(variable, evaluator.typeOf(variable));
+                writeIntLiteral(evaluator.valueOf(variable));
+                methodVisitor.visitVarInsn(ISTORE, slot);
+            }
+            for (final Stmt statement : statements.subList(evaluator.staticStatements,
+                                                           statements.size())) {
+                writeStatement(statement);
+            }
+        }
+        return finish();
+    } // writeEvaluatedProgramToBytes
+
+    public void writeEvaluatedProgram(final Program program) throws CodeGeneratorException, IOException {
+        writeClassFile(writeEvaluatedProgramToBytes(program));
+    } // writeEvaluatedProgram
+    // ---END PARTIAL EVALUATION---
+
+    // ---BEGIN FLAT PROGRAMS---
+    // The flat form is already in the order the JVM wants, so this is a
+    // single pass with no tree walking and no symbol table lookups by
+    // object; variables are tracked by their index in the name table, in
+    // flatSlots, which is reused like the rest of the symbol table.
+    // The only checks needed are that the stack is used properly, and
+    // that variables are declared before use, exactly once.
+    //
+    // The operators and types are shared, so that the flat form can go
+    // through the same helpers as the tree form without allocating.
+    private static final BOP[] FLAT_BOPS = new BOP[]{
+        new PlusBOP(), // FlatProgram.PLUS
+        new MinusBOP(), // FlatProgram.MINUS
+        new MultBOP(), // FlatProgram.MULT
+        new DivBOP() // FlatProgram.DIV
+    };
+    private static final Type FLAT_INT = new IntType();
+    private static final Type FLAT_BOOL = new BoolType();
+
+    private int flatSlotFor(final FlatProgram program,
+                            final int nameIndex) throws CodeGeneratorException {
+        if (flatSlots[nameIndex] < 0) {
+            // should be caught by typechecker
+            throw new CodeGeneratorException("no such variable declared: " + program.names[nameIndex]);
+        }
+        return flatSlots[nameIndex];
+    } // flatSlotFor
+
+    private void writeFlatDeclaration(final FlatProgram program,
+                                      final int index) throws CodeGeneratorException {
+        final int nameIndex = program.operands[index];
+        if (flatSlots[nameIndex] >= 0) {
+            // should be caught by typechecker
+            throw new CodeGeneratorException("Variable already in scope: " + program.names[nameIndex]);
+        }
+        flatSlots[nameIndex] =
+            newSlot(null,
+                    (program.opcodes[index] == FlatProgram.DECLARE_BOOL) ? FLAT_BOOL : FLAT_INT);
+        methodVisitor.visitVarInsn(ISTORE, flatSlots[nameIndex]);
+    } // writeFlatDeclaration
+
+    public byte[] writeFlatProgramToBytes(final FlatProgram program) throws CodeGeneratorException {
+        checkNotFinished();
+        final int nameCount = program.names.length;
+        if (nameCount > flatSlots.length) {
+            flatSlots = new int[Math.max(nameCount, flatSlots.length * 2)];
+        }
+        Arrays.fill(flatSlots, 0, nameCount, -1);
+
+        int stackHeight = 0;
+        for (int index = 0; index < program.length(); index++) {
+            final int opcode = program.opcodes[index];
+            final int operand = program.operands[index];
+            if (FlatProgram.hasOperand(opcode) &&
+                opcode != FlatProgram.INT_LITERAL &&
+                opcode != FlatProgram.BOOL_LITERAL &&
+                (operand < 0 || operand >= nameCount)) {
+                throw new CodeGeneratorException("name index out of range at instruction " + index);
+            }
+            if ((FlatProgram.isBinop(opcode) && stackHeight < 2) ||
+                (FlatProgram.isStatement(opcode) &&
+                 stackHeight != ((opcode == FlatProgram.PRINT) ? 0 : 1))) {
+                throw new CodeGeneratorException("malformed flat program at instruction " + index);
+            }
+
+            switch (opcode) {
+            case FlatProgram.INT_LITERAL:
+                writeIntLiteral(operand);
+                stackHeight++;
+                break;
+            case FlatProgram.BOOL_LITERAL:
+                writeIntLiteral((operand != 0) ? 1 : 0);
+                stackHeight++;
+                break;
+            case FlatProgram.VARIABLE:
+                methodVisitor.visitVarInsn(ILOAD, flatSlotFor(program, operand));
+                stackHeight++;
+                break;
+            case FlatProgram.PLUS:
+            case FlatProgram.MINUS:
+            case FlatProgram.MULT:
+            case FlatProgram.DIV:
+                writeOp(FLAT_BOPS[opcode - FlatProgram.PLUS]);
+                stackHeight--;
+                break;
+            case FlatProgram.DECLARE_INT:
+            case FlatProgram.DECLARE_BOOL:
+                writeFlatDeclaration(program, index);
+                stackHeight--;
+                break;
+            case FlatProgram.ASSIGN:
+                methodVisitor.visitVarInsn(ISTORE, flatSlotFor(program, operand));
+                stackHeight--;
+                break;
+            case FlatProgram.PRINT: {
+                final int slot = flatSlotFor(program, operand);
+                writePrintln(slot, slotTypes[slot]);
+                break;
+            }
+            default:
+                assert(false);
+                throw new CodeGeneratorException("unknown flat opcode: " + opcode);
+            }
+        }
+
+        if (stackHeight != 0) {
+            throw new CodeGeneratorException("malformed flat program: unused expression at end");
+        }
+        return finish();
+    } // writeFlatProgramToBytes
+
+    public void writeFlatProgram(final FlatProgram program) throws CodeGeneratorException, IOException {
+        writeClassFile(writeFlatProgramToBytes(program));
+    } // writeFlatProgram
+    // ---END FLAT PROGRAMS---
+
+    private byte[] finish() {
         methodVisitor.visitInsn(RETURN);
         methodVisitor.visitMaxs(0, 0);
+        if (methodNode != null) {
+            peepholeReport = PeepholeOptimizer.optimize(methodNode);
+            methodNode.accept(writer);
+        }
         writer.visitEnd();
-        
-        final BufferedOutputStream output =
-            new BufferedOutputStream(new FileOutputStream(new File(outputClassName + ".class")));
-        output.write(writer.toByteArray());
-        output.close();
+        finished = true;
+        return writer.toByteArray();
+    } // finish
+
+    public void writeProgram(final Program program) throws CodeGeneratorException, IOException {
+        writeClassFile(writeProgramToBytes(program));
     } // writeProgram
+
+    private void writeClassFile(final byte[] bytes) throws IOException {
+        // the whole class is already in memory, so a single unbuffered
+        // write is all that's needed
+        final FileOutputStream output = new FileOutputStream(outputClassName + ".class");
+        try {
+            output.write(bytes);
+        } finally {
+            output.close();
+        }
+    } // writeClassFile
 } // CodeGenerator
@@ -0,0 +1,155 @@
+package codegen_example.codegen;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
+
+import codegen_example.syntax.*;
+
+// Runs as much of a program as possible at compile time.
+//
+// The language has no input, so every value in a program is known ahead
+// of time, and so is everything it prints.  Evaluation goes statement by
+// statement, collecting output, until it reaches a statement whose
+// behavior has to be left to the JVM:
+// -division by zero, which must throw at run time, after everything
+//  before it has been printed
+// -a bool variable given a value other than true or false, since exactly
+//  what the JVM prints for it isn't worth second-guessing here
+// -use of an undeclared variable or a redeclaration, which the code
+//  generator reports as an error
+// Everything from that statement onward is compiled as usual, starting
+// from the values the evaluated statements left behind.
+//
+// Values are kept the way the JVM sees them: bools are ints, and int
+// arithmetic wraps around.
+public class PartialEvaluator {
+    // ---BEGIN INSTANCE VARIABLES---
+    public final String output; // lines separated by \n, not the platform's separator
+    public final int staticStatements; // how many statements were evaluated
+
+    private final List<Variable> declared;
+    private final Map<Variable, Type> types;
+    private final Map<Variable, Integer> values;
+    private boolean stuck;
+    // ---END INSTANCE VARIABLES---
+
+    public PartialEvaluator(final Program program) {
+        declared = new ArrayList<Variable>();
+        types = new HashMap<Variable, Type>();
+        values = new HashMap<Variable, Integer>();
+        stuck = false;
+
+        final StringBuilder builder = new StringBuilder();
+        int evaluated = 0;
+        for (final Stmt statement : program.statements) {
+            evaluateStatement(statement, builder);
+            if (stuck) {
+                break;
+            }
+            evaluated++;
+        }
+        output = builder.toString();
+        staticStatements = evaluated;
+    } // PartialEvaluator
+
+    // variables declared by the evaluated statements, in declaration order
+    public List<Variable> declaredVariables() {
+        return declared;
+    } // declaredVariables
+
+    public Type typeOf(final Variable variable) {
+        return types.get(variable);
+    } // typeOf
+
+    public int valueOf(final Variable variable) {
+        return values.get(variable).intValue();
+    } // valueOf
+
+    private int evaluateOp(final BOP bop, final int left, final int right) {
+        if (bop instanceof PlusBOP) {
+            return left + right;
+        } else if (bop instanceof MinusBOP) {
+            return left - right;
+        } else if (bop instanceof MultBOP) {
+            return left * right;
+        } else if (bop instanceof DivBOP && right != 0) {
+            return left / right;
+        } else {
+            stuck = true;
+            return 0;
+        }
+    } // evaluateOp
+
+    // sets stuck instead of returning a value if this can't be evaluated
+    private int evaluateExpression(final Exp exp) {
+        if (exp instanceof VariableExp) {
+            final Variable variable = ((VariableExp)exp).variable;
+            if (types.containsKey(variable)) {
+                return valueOf(variable);
+            }
+        } else if (exp instanceof IntegerLiteralExp) {
+            return ((IntegerLiteralExp)exp).value;
+        } else if (exp instanceof BooleanLiteralExp) {
+            return (((BooleanLiteralExp)exp).value) ? 1 : 0;
+        } else if (exp instanceof BinopExp) {
+            final BinopExp asBinop = (BinopExp)exp;
+            final int left = evaluateExpression(asBinop.left);
+            final int right = evaluateExpression(asBinop.right);
+            if (!stuck) {
+                return evaluateOp(asBinop.bop, left, right);
+            }
+        }
+        stuck = true;
+        return 0;
+    } // evaluateExpression
+
+    private void assign(final Variable variable, final Type type, final int value) {
+        if (type instanceof BoolType && value != 0 && value != 1) {
+            stuck = true;
+        } else {
+            values.put(variable, Integer.valueOf(value));
+        }
+    } // assign
+
+    private void evaluateStatement(final Stmt stmt, final StringBuilder builder) {
+        if (stmt instanceof VariableDeclarationStmt) {
+            final VariableDeclarationStmt asDec = (VariableDeclarationStmt)stmt;
+            final int value = evaluateExpression(asDec.exp);
+            if (!stuck &&
+                !types.containsKey(asDec.variable) &&
+                (asDec.type instanceof IntType || asDec.type instanceof BoolType)) {
+                assign(asDec.variable, asDec.type, value);
+                if (!stuck) {
+                    declared.add(asDec.variable);
+                    types.put(asDec.variable, asDec.type);
+                }
+            } else {
+                stuck = true;
+            }
+        } else if (stmt instanceof AssignStmt) {
+            final AssignStmt asAssign = (AssignStmt)stmt;
+            final int value = evaluateExpression(asAssign.exp);
+            if (!stuck && types.containsKey(asAssign.variable)) {
+                assign(asAssign.variable, typeOf(asAssign.variable), value);
+            } else {
+                stuck = true;
+            }
+        } else if (stmt instanceof PrintStmt) {
+            final Variable variable = ((PrintStmt)stmt).variable;
+            if (types.containsKey(variable)) {
+                if (typeOf(variable) instanceof BoolType) {
+                    builder.append(valueOf(variable) != 0);
+                } else {
+                    builder.append(valueOf(variable));
+                }
+                builder.append('\n');
+            } else {
+                stuck = true;
+            }
+        } else {
+            stuck = true;
+        }
+    } // evaluateStatement
+} // PartialEvaluator
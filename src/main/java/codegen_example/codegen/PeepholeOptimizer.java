@@ -0,0 +1,342 @@
+package codegen_example.codegen;
+
+import java.util.BitSet;
+
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import static org.objectweb.asm.Opcodes.*;
+
+// Cleans up the redundancies the code generator leaves behind, working on
+// the tree form of a single method before it is serialized.
+//
+// The generator only ever emits straight-line code, and the stack is empty
+// between statements.  That makes it cheap to compute the stack height
+// before every instruction, which is all the rewrites below need in order
+// to find where a value came from.  If the method contains anything the
+// optimizer doesn't know the stack effect of, it is left untouched.
+//
+// Each rewrite below is a single pass over the method which keeps going
+// after a match; the passes are repeated until none of them change
+// anything, which only takes a few rounds since most matches are
+// independent of each other:
+// -x = x: ILOAD n; ISTORE n is removed
+// -store then print: ISTORE n; GETSTATIC out; ILOAD n becomes
+//  DUP; ISTORE n, with the GETSTATIC moved to before the stored value
+// -store then load: ISTORE n; ILOAD n becomes DUP; ISTORE n
+// -dead stores: ISTORE n which is never loaded afterward becomes POP
+// -POP of something with no side effects removes both
+// -consecutive prints: a GETSTATIC out right after a println becomes a DUP
+//  of the previous print's receiver, made just before that print's
+//  argument so that only one spare copy is ever on the stack
+//
+// IDIV is never removed, since it can throw.
+public class PeepholeOptimizer {
+    // ---BEGIN STATICS---
+    private static final int UNKNOWN = -1;
+    // ---END STATICS---
+
+    public static PeepholeReport optimize(final MethodNode method) {
+        final InsnList instructions = method.instructions;
+        final int before = countInstructions(instructions);
+        if (stackHeights(instructions.toArray()) != null) {
+            boolean changed = true;
+            while (changed) {
+                // not ||, so every pass gets a turn each round
+                changed = (removeSelfAssignments(instructions) |
+                           hoistPrintAfterStore(instructions) |
+                           dupStoreThenLoad(instructions) |
+                           popDeadStores(instructions) |
+                           removeUselessPops(instructions) |
+                           collapsePrintStreams(instructions));
+            }
+        }
+        return new PeepholeReport(before, countInstructions(instructions));
+    } // optimize
+
+    public static int countInstructions(final InsnList instructions) {
+        int count = 0;
+        for (final AbstractInsnNode insn : instructions.toArray()) {
+            if (insn.getOpcode() >= 0) {
+                count++;
+            }
+        }
+        return count;
+    } // countInstructions
+
+    // ---BEGIN STACK EFFECTS---
+    private static int pops(final AbstractInsnNode insn) {
+        switch (insn.getOpcode()) {
+        case ICONST_M1: case ICONST_0: case ICONST_1: case ICONST_2:
+        case ICONST_3: case ICONST_4: case ICONST_5:
+        case BIPUSH: case SIPUSH: case LDC: case ILOAD:
+        case GETSTATIC: case RETURN:
+            return 0;
+        case ISTORE: case POP: case DUP:
+            return 1;
+        case IADD: case ISUB: case IMUL: case IDIV: case SWAP:
+            return 2;
+        case INVOKESTATIC:
+        case INVOKEVIRTUAL: {
+            final MethodInsnNode asMethod = (MethodInsnNode)insn;
+            return (Type.getArgumentTypes(asMethod.desc).length +
+                    ((insn.getOpcode() == INVOKESTATIC) ? 0 : 1));
+        }
+        default:
+            return (insn.getOpcode() < 0) ? 0 : UNKNOWN;
+        }
+    } // pops
+
+    private static int pushes(final AbstractInsnNode insn) {
+        switch (insn.getOpcode()) {
+        case ICONST_M1: case ICONST_0: case ICONST_1: case ICONST_2:
+        case ICONST_3: case ICONST_4: case ICONST_5:
+        case BIPUSH: case SIPUSH: case LDC: case ILOAD: case GETSTATIC:
+        case IADD: case ISUB: case IMUL: case IDIV:
+            return 1;
+        case ISTORE: case POP: case RETURN:
+            return 0;
+        case DUP: case SWAP:
+            return 2;
+        case INVOKESTATIC:
+        case INVOKEVIRTUAL:
+            return (Type.getReturnType(((MethodInsnNode)insn).desc) == Type.VOID_TYPE) ? 0 : 1;
+        default:
+            return (insn.getOpcode() < 0) ? 0 : UNKNOWN;
+        }
+    } // pushes
+
+    // heights[i] is the stack height before instruction i; heights has one
+    // extra element at the end for the height after the last instruction.
+    // Returns null if any instruction has an unknown effect.
+    private static int[] stackHeights(final AbstractInsnNode[] insns) {
+        final int[] heights = new int[insns.length + 1];
+        heights[0] = 0;
+        for (int i = 0; i < insns.length; i++) {
+            final int pops = pops(insns[i]);
+            final int pushes = pushes(insns[i]);
+            if (pops == UNKNOWN || pushes == UNKNOWN || heights[i] < pops) {
+                return null;
+            }
+            heights[i + 1] = heights[i] - pops + pushes;
+        }
+        return heights;
+    } // stackHeights
+
+    // ---END STACK EFFECTS---
+
+    // ---BEGIN MATCHERS---
+    private static boolean isVar(final AbstractInsnNode insn, final int opcode) {
+        return insn != null && insn.getOpcode() == opcode;
+    } // isVar
+
+    private static boolean sameVar(final AbstractInsnNode first,
+                                   final AbstractInsnNode second) {
+        return ((VarInsnNode)first).var == ((VarInsnNode)second).var;
+    } // sameVar
+
+    private static boolean isGetOut(final AbstractInsnNode insn) {
+        if (insn != null && insn.getOpcode() == GETSTATIC) {
+            final FieldInsnNode asField = (FieldInsnNode)insn;
+            return (asField.owner.equals("java/lang/System") &&
+                    asField.name.equals("out"));
+        } else {
+            return false;
+        }
+    } // isGetOut
+
+    private static boolean isPrintln(final AbstractInsnNode insn) {
+        if (insn != null && insn.getOpcode() == INVOKEVIRTUAL) {
+            final MethodInsnNode asMethod = (MethodInsnNode)insn;
+            return (asMethod.owner.equals("java/io/PrintStream") &&
+                    asMethod.name.equals("println"));
+        } else {
+            return false;
+        }
+    } // isPrintln
+
+    // pushes a value without side effects
+    private static boolean isPurePush(final AbstractInsnNode insn) {
+        switch (insn.getOpcode()) {
+        case ICONST_M1: case ICONST_0: case ICONST_1: case ICONST_2:
+        case ICONST_3: case ICONST_4: case ICONST_5:
+        case BIPUSH: case SIPUSH: case LDC: case ILOAD: case DUP:
+            return true;
+        default:
+            return isGetOut(insn);
+        }
+    } // isPurePush
+    // ---END MATCHERS---
+
+    // ---BEGIN REWRITES---
+    private static boolean removeSelfAssignments(final InsnList instructions) {
+        boolean changed = false;
+        AbstractInsnNode insn = instructions.getFirst();
+        while (insn != null) {
+            final AbstractInsnNode next = insn.getNext();
+            if (isVar(insn, ILOAD) && isVar(next, ISTORE) && sameVar(insn, next)) {
+                final AbstractInsnNode after = next.getNext();
+                instructions.remove(insn);
+                instructions.remove(next);
+                insn = after;
+                changed = true;
+            } else {
+                insn = next;
+            }
+        }
+        return changed;
+    } // removeSelfAssignments
+
+    // The heights are computed once up front.  Moving the GETSTATIC leaves
+    // the heights from the end of a match onward as they were, so the only
+    // matches that have to wait for the next pass are those whose stored
+    // value starts inside an earlier match.
+    private static boolean hoistPrintAfterStore(final InsnList instructions) {
+        final AbstractInsnNode[] insns = instructions.toArray();
+        final int[] heights = stackHeights(insns);
+        boolean changed = false;
+        int lastEnd = -1;
+        for (int i = 0; i + 2 < insns.length; i++) {
+            if (isVar(insns[i], ISTORE) &&
+                isGetOut(insns[i + 1]) &&
+                isVar(insns[i + 2], ILOAD) &&
+                sameVar(insns[i], insns[i + 2])) {
+                // find where the stored value started being computed
+                final int valueSlot = heights[i] - 1;
+                int start = i - 1;
+                while (start > lastEnd && heights[start] > valueSlot) {
+                    start--;
+                }
+                if (start <= lastEnd || heights[start] != valueSlot) {
+                    continue;
+                }
+                instructions.insertBefore(insns[start], insns[i + 1].clone(null));
+                instructions.insertBefore(insns[i], new InsnNode(DUP));
+                instructions.remove(insns[i + 1]);
+                instructions.remove(insns[i + 2]);
+                lastEnd = i + 2;
+                i += 2;
+                changed = true;
+            }
+        }
+        return changed;
+    } // hoistPrintAfterStore
+
+    private static boolean dupStoreThenLoad(final InsnList instructions) {
+        boolean changed = false;
+        AbstractInsnNode insn = instructions.getFirst();
+        while (insn != null) {
+            final AbstractInsnNode next = insn.getNext();
+            if (isVar(insn, ISTORE) && isVar(next, ILOAD) && sameVar(insn, next)) {
+                instructions.insertBefore(insn, new InsnNode(DUP));
+                instructions.remove(next);
+                changed = true;
+            }
+            insn = insn.getNext();
+        }
+        return changed;
+    } // dupStoreThenLoad
+
+    // Walks backward, keeping track of which variables are loaded before
+    // they are next stored to.
+    private static boolean popDeadStores(final InsnList instructions) {
+        final BitSet live = new BitSet();
+        boolean changed = false;
+        AbstractInsnNode insn = instructions.getLast();
+        while (insn != null) {
+            final AbstractInsnNode previous = insn.getPrevious();
+            if (isVar(insn, ILOAD)) {
+                live.set(((VarInsnNode)insn).var);
+            } else if (isVar(insn, ISTORE)) {
+                final int var = ((VarInsnNode)insn).var;
+                if (!live.get(var)) {
+                    instructions.set(insn, new InsnNode(POP));
+                    changed = true;
+                }
+                live.clear(var);
+            }
+            insn = previous;
+        }
+        return changed;
+    } // popDeadStores
+
+    private static boolean removeUselessPops(final InsnList instructions) {
+        boolean changed = false;
+        AbstractInsnNode insn = instructions.getFirst();
+        while (insn != null) {
+            AbstractInsnNode next = insn.getNext();
+            final AbstractInsnNode previous = insn.getPrevious();
+            if (insn.getOpcode() == POP && previous != null) {
+                if (isPurePush(previous)) {
+                    instructions.remove(previous);
+                    instructions.remove(insn);
+                    changed = true;
+                } else {
+                    switch (previous.getOpcode()) {
+                    case IADD: case ISUB: case IMUL: {
+                        // the result is unused, so neither are the operands;
+                        // look at the new POP next, then this one again
+                        final AbstractInsnNode pop = new InsnNode(POP);
+                        instructions.set(previous, pop);
+                        next = pop;
+                        changed = true;
+                        break;
+                    }
+                    }
+                }
+            }
+            insn = next;
+        }
+        return changed;
+    } // removeUselessPops
+
+    // Walks forward, keeping track of which stack slots hold System.out and
+    // the last instruction after which each slot was on top.  When a print
+    // is immediately followed by another GETSTATIC out, the previous print's
+    // receiver is DUPed just before its argument is pushed, so the copy is
+    // on the stack only while that one argument is computed.
+    private static boolean collapsePrintStreams(final InsnList instructions) {
+        final int size = instructions.size();
+        final boolean[] isOut = new boolean[size + 1];
+        final AbstractInsnNode[] topAfter = new AbstractInsnNode[size + 1];
+        boolean changed = false;
+        int height = 0;
+        AbstractInsnNode insn = instructions.getFirst();
+        while (insn != null) {
+            final AbstractInsnNode next = insn.getNext();
+            final AbstractInsnNode previous = insn.getPrevious();
+            if (isGetOut(insn) &&
+                isPrintln(previous) &&
+                isOut[height] &&
+                topAfter[height] != null) {
+                // height is the slot the previous print's receiver was in
+                instructions.insert(topAfter[height], new InsnNode(DUP));
+                instructions.remove(insn);
+                topAfter[height] = previous;
+                height++;
+                changed = true;
+            } else if (insn.getOpcode() == DUP) {
+                isOut[height] = isOut[height - 1];
+                height++;
+                topAfter[height - 1] = insn;
+            } else {
+                final int base = height - pops(insn);
+                height = base + pushes(insn);
+                for (int slot = base; slot < height; slot++) {
+                    isOut[slot] = isGetOut(insn);
+                }
+                if (height > 0) {
+                    topAfter[height - 1] = insn;
+                }
+            }
+            insn = next;
+        }
+        return changed;
+    } // collapsePrintStreams
+    // ---END REWRITES---
+} // PeepholeOptimizer
@@ -0,0 +1,28 @@
+package codegen_example.codegen;
+
+public class PeepholeReport {
+    public final int instructionsBefore;
+    public final int instructionsAfter;
+
+    public PeepholeReport(final int instructionsBefore,
+                          final int instructionsAfter) {
+        assert(instructionsAfter <= instructionsBefore);
+        this.instructionsBefore = instructionsBefore;
+        this.instructionsAfter = instructionsAfter;
+    }
+
+    public int eliminated() {
+        return instructionsBefore - instructionsAfter;
+    } // eliminated
+
+    @Override
+    public String toString() {
+        return ("peephole: " +
+                instructionsBefore +
+                " -> " +
+                instructionsAfter +
+                " instructions (" +
+                eliminated() +
+                " eliminated)");
+    }
+} // PeepholeReport
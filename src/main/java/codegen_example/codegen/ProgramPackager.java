@@ -0,0 +1,243 @@
+package codegen_example.codegen;
+
+import java.util.List;
+import java.util.ArrayList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.IOException;
+
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import codegen_example.syntax.Program;
+
+// Packages a compiled program so it starts as fast as possible.
+//
+// Compiled programs are tiny and short-lived, so most of the time spent
+// running one is JVM startup: loading, parsing, and verifying classes.
+// Application Class-Data Sharing (AppCDS) moves that work to ahead of
+// time.  A training run of the program records every class it loads, JDK
+// classes included, in an archive which later runs map straight into
+// memory, already parsed and verified.
+//
+// Since JDK 12 the JDK ships with an archive of its own classes, which is
+// by far the biggest win; a compiled program is one class on top of that,
+// so its own archive saves comparatively little.  Launches also turn off
+// the optimizing JIT, the parallel GC's setup, and perf data, none of
+// which pay off in a run this short.
+//
+// The archive is tied to the exact JVM which created it, and to the jar's
+// path and modification time, so it has to be rebuilt if either changes.
+// Creating one needs JDK 13 or later (-XX:ArchiveClassesAtExit), which is
+// checked against the java executable given, not the JVM running this.
+public class ProgramPackager {
+    // ---BEGIN STATICS---
+    public static final int MIN_CDS_RELEASE = 13;
+    // class file major version minus this is the first release to load it,
+    // e.g. 61 - 44 = 17
+    public static final int RELEASE_OFFSET = 44;
+    public static final String[] STARTUP_FLAGS = new String[]{
+        "-XX:TieredStopAtLevel=1",
+        "-XX:+UseSerialGC",
+        "-XX:-UsePerfData"
+    };
+    // ---END STATICS---
+
+    public final File outputDirectory;
+    public final String javaExecutable;
+    private int javaRelease; // 0 until javaExecutable has been asked
+
+    public ProgramPackager(final File outputDirectory) {
+        this(outputDirectory,
+             System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+    } // ProgramPackager
+
+    // the archive only works with the JVM which made it, so use the same
+    // executable both to create it and to launch with it
+    public ProgramPackager(final File outputDirectory,
+                           final String javaExecutable) {
+        this.outputDirectory = outputDirectory;
+        this.javaExecutable = javaExecutable;
+    } // ProgramPackager
+
+    // Pulls the release out of "java -version" output, which looks like
+    // 'openjdk version "17.0.9" 2023-10-17', or "1.8.0_392" for releases
+    // before 9.  Returns -1 if there's no version in it.
+    public static int parseRelease(final String versionOutput) {
+        final int start = versionOutput.indexOf('"');
+        final int end = (start < 0) ? -1 : versionOutput.indexOf('"', start + 1);
+        if (end < 0) {
+            return -1;
+        }
+        final String[] parts = versionOutput.substring(start + 1, end).split("[._+-]");
+        try {
+            final int first = Integer.parseInt(parts[0]);
+            if (first == 1 && parts.length > 1) {
+                return Integer.parseInt(parts[1]);
+            } else {
+                return first;
+            }
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    } // parseRelease
+
+    // release of javaExecutable, which need not be the JVM running this;
+    // only asks it the first time
+    public int javaRelease() throws IOException, InterruptedException {
+        if (javaRelease == 0) {
+            final List<String> command = new ArrayList<String>();
+            command.add(javaExecutable);
+            command.add("-version");
+            final String output = runForOutput(command);
+            final int release = parseRelease(output);
+            if (release < 0) {
+                throw new IOException("could not tell the version of " + javaExecutable + ":\n" + output);
+            }
+            javaRelease = release;
+        }
+        return javaRelease;
+    } // javaRelease
+
+    public boolean supportsArchives() throws IOException, InterruptedException {
+        return javaRelease() >= MIN_CDS_RELEASE;
+    } // supportsArchives
+
+    public File jarFor(final String className) {
+        return new File(outputDirectory, className.replace('/', '_') + ".jar");
+    } // jarFor
+
+    public File archiveFor(final String className) {
+        return new File(outputDirectory, className.replace('/', '_') + ".jsa");
+    } // archiveFor
+
+    // the major version is the big-endian short at offset 6
+    public static int releaseFor(final byte[] classBytes) {
+        return (((classBytes[6] & 0xFF) << 8) | (classBytes[7] & 0xFF)) - RELEASE_OFFSET;
+    } // releaseFor
+
+    // className is an internal name, as given to CodeGenerator.  Refuses
+    // classes too new for javaExecutable, which would only fail at launch.
+    public File writeJar(final String className, final byte[] classBytes)
+        throws IOException, InterruptedException {
+        if (releaseFor(classBytes) > javaRelease()) {
+            throw new IOException("class file needs Java " + releaseFor(classBytes) +
+                                  ", but " + javaExecutable + " is Java " + javaRelease());
+        }
+        final Manifest manifest = new Manifest();
+        final Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.put(Attributes.Name.MAIN_CLASS, className.replace('/', '.'));
+
+        final File jar = jarFor(className);
+        final JarOutputStream output = new JarOutputStream(new FileOutputStream(jar), manifest);
+        try {
+            output.putNextEntry(new JarEntry(className + ".class"));
+            output.write(classBytes);
+            output.closeEntry();
+        } finally {
+            output.close();
+        }
+        return jar;
+    } // writeJar
+
+    public File writeJar(final CodeGenerator generator,
+                         final Program program)
+        throws CodeGeneratorException, IOException, InterruptedException {
+        return writeJar(generator.outputClassName, generator.writeProgramToBytes(program));
+    } // writeJar
+
+    // Does a training run of the jar to record what it loads.  The
+    // program's output from that run is thrown away.
+    public File writeArchive(final String className) throws IOException, InterruptedException {
+        if (!supportsArchives()) {
+            throw new IOException("class data sharing archives need JDK " + MIN_CDS_RELEASE + " or later");
+        }
+        final File archive = archiveFor(className);
+        archive.delete();
+
+        final List<String> command = new ArrayList<String>();
+        command.add(javaExecutable);
+        addStartupFlags(command);
+        command.add("-XX:ArchiveClassesAtExit=" + archive.getPath());
+        command.add("-jar");
+        command.add(jarFor(className).getPath());
+        final String output = runForOutput(command);
+
+        // The program itself may exit abnormally (e.g., division by zero),
+        // which is fine as long as the archive got written.  If the launcher
+        // couldn't even load the main class, though, an archive is still
+        // written but every launch with it fails the same way.  Programs
+        // only print numbers and booleans, so a line starting with "Error:"
+        // can only have come from the launcher.
+        if (launchFailed(output)) {
+            archive.delete();
+            throw new IOException("training run could not start the program:\n" + output);
+        }
+        if (!archive.isFile()) {
+            throw new IOException("failed to create class data sharing archive:\n" + output);
+        }
+        return archive;
+    } // writeArchive
+
+    private static boolean launchFailed(final String output) {
+        for (final String line : output.split("\\R")) {
+            if (line.startsWith("Error:")) {
+                return true;
+            }
+        }
+        return false;
+    } // launchFailed
+
+    // the archive records which GC it was made with, so it has to be made
+    // with the same flags it's launched with
+    private static void addStartupFlags(final List<String> command) {
+        for (final String flag : STARTUP_FLAGS) {
+            command.add(flag);
+        }
+    } // addStartupFlags
+
+    // command to run a packaged program; archive may be null
+    public List<String> launchCommand(final String className, final File archive) {
+        final List<String> command = new ArrayList<String>();
+        command.add(javaExecutable);
+        addStartupFlags(command);
+        if (archive != null) {
+            command.add("-XX:SharedArchiveFile=" + archive.getPath());
+        }
+        command.add("-jar");
+        command.add(jarFor(className).getPath());
+        return command;
+    } // launchCommand
+
+    // stdout and stderr together
+    private static String runForOutput(final List<String> command)
+        throws IOException, InterruptedException {
+        final ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        final Process process = builder.start();
+        process.getOutputStream().close();
+        final String output = readAll(process.getInputStream());
+        process.waitFor();
+        return output;
+    } // runForOutput
+
+    private static String readAll(final InputStream input) throws IOException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            final byte[] chunk = new byte[4096];
+            int read;
+            while ((read = input.read(chunk)) != -1) {
+                buffer.write(chunk, 0, read);
+            }
+        } finally {
+            input.close();
+        }
+        return buffer.toString();
+    } // readAll
+} // ProgramPackager
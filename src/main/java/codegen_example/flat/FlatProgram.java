@@ -0,0 +1,386 @@
+package codegen_example.flat;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.List;
+import java.util.ArrayList;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.IOException;
+
+import codegen_example.syntax.*;
+
+// A program flattened into two parallel int arrays plus a table of
+// variable names, instead of a tree of objects.
+//
+// Instructions are in postfix order: an expression's operands come before
+// the operator, and a statement's expression comes before the statement.
+// That's the same order the JVM wants them in, so the code generator can
+// emit straight from this form in a single loop.
+//
+// For example, "int x = 1 + y; print(x);" is:
+//   opcodes:  INT_LITERAL  VARIABLE  PLUS  DECLARE_INT  PRINT
+//   operands: 1            0 (y)     0     1 (x)        1 (x)
+//   names:    y, x
+//
+// Names are numbered in the order they first appear, and each appears only
+// once, since variables are told apart by name index.  Operands of
+// instructions which don't take one are always 0.
+public class FlatProgram {
+    // ---BEGIN OPCODES---
+    // expressions
+    public static final int INT_LITERAL = 0; // operand: value
+    public static final int BOOL_LITERAL = 1; // operand: 0 or 1
+    public static final int VARIABLE = 2; // operand: name index
+    public static final int PLUS = 3;
+    public static final int MINUS = 4;
+    public static final int MULT = 5;
+    public static final int DIV = 6;
+    // statements, all with a name index as operand
+    public static final int DECLARE_INT = 7;
+    public static final int DECLARE_BOOL = 8;
+    public static final int ASSIGN = 9;
+    public static final int PRINT = 10;
+    // ---END OPCODES---
+
+    // ---BEGIN FILE FORMAT---
+    // magic, version, name count, names (modified UTF-8), instruction count,
+    // then each instruction as an opcode byte followed by a 4-byte operand
+    // if the opcode takes one
+    public static final int MAGIC = 0x464C4154; // "FLAT"
+    public static final int VERSION = 1;
+    // ---END FILE FORMAT---
+
+    public final int[] opcodes;
+    public final int[] operands;
+    public final String[] names;
+
+    public FlatProgram(final int[] opcodes,
+                       final int[] operands,
+                       final String[] names) {
+        assert(opcodes.length == operands.length);
+        final Set<String> seen = new HashSet<String>();
+        for (final String name : names) {
+            if (!seen.add(name)) {
+                throw new IllegalArgumentException("name appears twice in name table: " + name);
+            }
+        }
+        this.opcodes = opcodes;
+        this.operands = operands;
+        this.names = names;
+    }
+
+    public int length() {
+        return opcodes.length;
+    } // length
+
+    public static boolean hasOperand(final int opcode) {
+        switch (opcode) {
+        case PLUS:
+        case MINUS:
+        case MULT:
+        case DIV:
+            return false;
+        default:
+            return true;
+        }
+    } // hasOperand
+
+    public static boolean isStatement(final int opcode) {
+        return opcode >= DECLARE_INT && opcode <= PRINT;
+    } // isStatement
+
+    public static boolean isBinop(final int opcode) {
+        return opcode >= PLUS && opcode <= DIV;
+    } // isBinop
+
+    // ---BEGIN FLATTENING---
+    // Builds up the arrays while walking the tree, or while reading a file.
+    private static class Flattener {
+        private final List<String> names = new ArrayList<String>();
+        private final Map<String, Integer> nameIndices = new HashMap<String, Integer>();
+        private int[] opcodes = new int[16];
+        private int[] operands = new int[16];
+        private int length = 0;
+
+        private int nameIndex(final Variable variable) {
+            final Integer existing = nameIndices.get(variable.name);
+            if (existing != null) {
+                return existing.intValue();
+            } else {
+                final int index = names.size();
+                names.add(variable.name);
+                nameIndices.put(variable.name, Integer.valueOf(index));
+                return index;
+            }
+        } // nameIndex
+
+        private void add(final int opcode, final int operand) {
+            if (length == opcodes.length) {
+                final int[] newOpcodes = new int[length * 2];
+                final int[] newOperands = new int[length * 2];
+                System.arraycopy(opcodes, 0, newOpcodes, 0, length);
+                System.arraycopy(operands, 0, newOperands, 0, length);
+                opcodes = newOpcodes;
+                operands = newOperands;
+            }
+            opcodes[length] = opcode;
+            operands[length] = operand;
+            length++;
+        } // add
+
+        private int opcodeFor(final BOP bop) throws FlatProgramException {
+            if (bop instanceof PlusBOP) {
+                return PLUS;
+            } else if (bop instanceof MinusBOP) {
+                return MINUS;
+            } else if (bop instanceof MultBOP) {
+                return MULT;
+            } else if (bop instanceof DivBOP) {
+                return DIV;
+            } else {
+                assert(false);
+                throw new FlatProgramException("unknown binary operator: " + bop);
+            }
+        } // opcodeFor
+
+        private void addExpression(final Exp exp) throws FlatProgramException {
+            if (exp instanceof VariableExp) {
+                add(VARIABLE, nameIndex(((VariableExp)exp).variable));
+            } else if (exp instanceof IntegerLiteralExp) {
+                add(INT_LITERAL, ((IntegerLiteralExp)exp).value);
+            } else if (exp instanceof BooleanLiteralExp) {
+                add(BOOL_LITERAL, (((BooleanLiteralExp)exp).value) ? 1 : 0);
+            } else if (exp instanceof BinopExp) {
+                final BinopExp asBinop = (BinopExp)exp;
+                addExpression(asBinop.left);
+                addExpression(asBinop.right);
+                add(opcodeFor(asBinop.bop), 0);
+            } else {
+                assert(false);
+                throw new FlatProgramException("Unrecognized expression: " + exp);
+            }
+        } // addExpression
+
+        private void addStatement(final Stmt stmt) throws FlatProgramException {
+            if (stmt instanceof VariableDeclarationStmt) {
+                final VariableDeclarationStmt asDec = (VariableDeclarationStmt)stmt;
+                final int opcode;
+                if (asDec.type instanceof IntType) {
+                    opcode = DECLARE_INT;
+                } else if (asDec.type instanceof BoolType) {
+                    opcode = DECLARE_BOOL;
+                } else {
+                    assert(false);
+                    throw new FlatProgramException("Unrecognized type: " + asDec.type);
+                }
+                addExpression(asDec.exp);
+                add(opcode, nameIndex(asDec.variable));
+            } else if (stmt instanceof AssignStmt) {
+                final AssignStmt asAssign = (AssignStmt)stmt;
+                addExpression(asAssign.exp);
+                add(ASSIGN, nameIndex(asAssign.variable));
+            } else if (stmt instanceof PrintStmt) {
+                add(PRINT, nameIndex(((PrintStmt)stmt).variable));
+            } else {
+                assert(false);
+                throw new FlatProgramException("Unrecognized statement: " + stmt);
+            }
+        } // addStatement
+
+        private FlatProgram toFlatProgram() {
+            final int[] finalOpcodes = new int[length];
+            final int[] finalOperands = new int[length];
+            System.arraycopy(opcodes, 0, finalOpcodes, 0, length);
+            System.arraycopy(operands, 0, finalOperands, 0, length);
+            return new FlatProgram(finalOpcodes,
+                                   finalOperands,
+                                   names.toArray(new String[names.size()]));
+        } // toFlatProgram
+    } // Flattener
+
+    public static FlatProgram fromProgram(final Program program) throws FlatProgramException {
+        final Flattener flattener = new Flattener();
+        for (final Stmt statement : program.statements) {
+            flattener.addStatement(statement);
+        }
+        return flattener.toFlatProgram();
+    } // fromProgram
+    // ---END FLATTENING---
+
+    // ---BEGIN UNFLATTENING---
+    private Variable variableAt(final int index) throws FlatProgramException {
+        if (operands[index] < 0 || operands[index] >= names.length) {
+            throw new FlatProgramException("name index out of range at instruction " + index);
+        }
+        return new Variable(names[operands[index]]);
+    } // variableAt
+
+    public Program toProgram() throws FlatProgramException {
+        final List<Stmt> statements = new ArrayList<Stmt>();
+        final List<Exp> stack = new ArrayList<Exp>();
+        for (int index = 0; index < opcodes.length; index++) {
+            final int opcode = opcodes[index];
+            if (isBinop(opcode) && stack.size() < 2) {
+                throw new FlatProgramException("missing operand at instruction " + index);
+            } else if (isStatement(opcode) && opcode != PRINT && stack.size() != 1) {
+                throw new FlatProgramException("expected one expression at instruction " + index);
+            } else if (opcode == PRINT && !stack.isEmpty()) {
+                throw new FlatProgramException("unused expression before instruction " + index);
+            }
+
+            switch (opcode) {
+            case INT_LITERAL:
+                stack.add(new IntegerLiteralExp(operands[index]));
+                break;
+            case BOOL_LITERAL:
+                stack.add(new BooleanLiteralExp(operands[index] != 0));
+                break;
+            case VARIABLE:
+                stack.add(new VariableExp(variableAt(index)));
+                break;
+            case PLUS:
+            case MINUS:
+            case MULT:
+            case DIV: {
+                final Exp right = stack.remove(stack.size() - 1);
+                final Exp left = stack.remove(stack.size() - 1);
+                final BOP bop;
+                if (opcode == PLUS) {
+                    bop = new PlusBOP();
+                } else if (opcode == MINUS) {
+                    bop = new MinusBOP();
+                } else if (opcode == MULT) {
+                    bop = new MultBOP();
+                } else {
+                    bop = new DivBOP();
+                }
+                stack.add(new BinopExp(left, bop, right));
+                break;
+            }
+            case DECLARE_INT:
+                statements.add(new VariableDeclarationStmt(new IntType(),
+                                                           variableAt(index),
+                                                           stack.remove(0)));
+                break;
+            case DECLARE_BOOL:
+                statements.add(new VariableDeclarationStmt(new BoolType(),
+                                                           variableAt(index),
+                                                           stack.remove(0)));
+                break;
+            case ASSIGN:
+                statements.add(new AssignStmt(variableAt(index), stack.remove(0)));
+                break;
+            case PRINT:
+                statements.add(new PrintStmt(variableAt(index)));
+                break;
+            default:
+                throw new FlatProgramException("unknown opcode " + opcode + " at instruction " + index);
+            }
+        }
+
+        if (!stack.isEmpty()) {
+            throw new FlatProgramException("unused expression at end of program");
+        }
+        return new Program(statements);
+    } // toProgram
+    // ---END UNFLATTENING---
+
+    // ---BEGIN SERIALIZATION---
+    // opcodes are written as a single byte, so anything which isn't a real
+    // opcode is rejected rather than cut down to one that might be
+    public void write(final OutputStream stream) throws FlatProgramException, IOException {
+        for (int index = 0; index < opcodes.length; index++) {
+            if (opcodes[index] < 0 || opcodes[index] > PRINT) {
+                throw new FlatProgramException("unknown opcode " + opcodes[index] + " at instruction " + index);
+            }
+        }
+        final DataOutputStream output = new DataOutputStream(stream);
+        output.writeInt(MAGIC);
+        output.writeShort(VERSION);
+        output.writeInt(names.length);
+        for (final String name : names) {
+            output.writeUTF(name);
+        }
+        output.writeInt(opcodes.length);
+        for (int index = 0; index < opcodes.length; index++) {
+            output.writeByte(opcodes[index]);
+            if (hasOperand(opcodes[index])) {
+                output.writeInt(operands[index]);
+            }
+        }
+        output.flush();
+    } // write
+
+    public void writeTo(final File file) throws FlatProgramException, IOException {
+        final OutputStream output = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            write(output);
+        } finally {
+            output.close();
+        }
+    } // writeTo
+
+    // Only checks that the file is well-formed; use toProgram or the code
+    // generator to check that the instructions make sense.  The counts in
+    // the file aren't trusted to size anything: the arrays grow as entries
+    // are actually read, so a file which claims more than it has ends in
+    // an EOFException instead of a huge allocation.
+    public static FlatProgram read(final InputStream stream) throws FlatProgramException, IOException {
+        final DataInputStream input = new DataInputStream(stream);
+        if (input.readInt() != MAGIC) {
+            throw new FlatProgramException("not a flat program");
+        }
+        final int version = input.readUnsignedShort();
+        if (version != VERSION) {
+            throw new FlatProgramException("unsupported flat program version: " + version);
+        }
+
+        final int nameCount = input.readInt();
+        if (nameCount < 0) {
+            throw new FlatProgramException("negative name count");
+        }
+        final Flattener result = new Flattener();
+        for (int index = 0; index < nameCount; index++) {
+            final String name = input.readUTF();
+            if (result.nameIndices.containsKey(name)) {
+                throw new FlatProgramException("name appears twice in name table: " + name);
+            }
+            result.nameIndices.put(name, Integer.valueOf(index));
+            result.names.add(name);
+        }
+
+        final int length = input.readInt();
+        if (length < 0) {
+            throw new FlatProgramException("negative instruction count");
+        }
+        for (int index = 0; index < length; index++) {
+            final int opcode = input.readUnsignedByte();
+            if (opcode > PRINT) {
+                throw new FlatProgramException("unknown opcode " + opcode + " at instruction " + index);
+            }
+            result.add(opcode, (hasOperand(opcode)) ? input.readInt() : 0);
+        }
+        return result.toFlatProgram();
+    } // read
+
+    public static FlatProgram readFrom(final File file) throws FlatProgramException, IOException {
+        final InputStream input = new BufferedInputStream(new FileInputStream(file));
+        try {
+            return read(input);
+        } finally {
+            input.close();
+        }
+    } // readFrom
+    // ---END SERIALIZATION---
+} // FlatProgram
@@ -0,0 +1,7 @@
+package codegen_example.flat;
+
+public class FlatProgramException extends Exception {
+    public FlatProgramException(final String message) {
+        super(message);
+    }
+} // FlatProgramException
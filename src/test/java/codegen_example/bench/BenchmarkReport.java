@@ -0,0 +1,268 @@
+package codegen_example.bench;
+
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
+import java.util.List;
+import java.util.ArrayList;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+// Turns JMH's JSON results (-rf json) into deltas, so a regression reads
+// as a number instead of something to work out by hand.
+//
+// For GeneratedCodeBenchmark, each compilation setting is compared against
+// the reference and none settings for the same program.  Given a second,
+// saved results file as a baseline, every benchmark is also compared
+// against its own score there.  Deltas are of the raw score: for a time
+// per operation, positive is slower; for a throughput, positive is faster.
+//
+// Usage: BenchmarkReport results.json [baseline.json]
+public class BenchmarkReport {
+    // ---BEGIN STATICS---
+    public static final String COMPILATION = "compilation";
+    // ---END STATICS---
+
+    // one benchmark run with one set of params
+    public static class Result {
+        public final String benchmark;
+        public final Map<String, String> params; // sorted by name
+        public final double score;
+        public final String unit;
+
+        public Result(final String benchmark,
+                      final Map<String, String> params,
+                      final double score,
+                      final String unit) {
+            this.benchmark = benchmark;
+            this.params = params;
+            this.score = score;
+            this.unit = unit;
+        }
+
+        // identifies this result, optionally with one param left out; the
+        // benchmark is named by class and method, without the package
+        public String key(final String without) {
+            final int methodDot = benchmark.lastIndexOf('.');
+            final StringBuilder builder =
+                new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.', methodDot - 1) + 1));
+            for (final Map.Entry<String, String> param : params.entrySet()) {
+                if (!param.getKey().equals(without)) {
+                    builder.append(' ');
+                    builder.append(param.getKey());
+                    builder.append('=');
+                    builder.append(param.getValue());
+                }
+            }
+            return builder.toString();
+        } // key
+    } // Result
+
+    // ---BEGIN JSON---
+    // Just enough JSON for what JMH writes: objects become Maps, arrays
+    // become Lists, numbers become Doubles.
+    private static class JsonReader {
+        private final String text;
+        private int position;
+
+        private JsonReader(final String text) {
+            this.text = text;
+            this.position = 0;
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        } // skipWhitespace
+
+        private void expect(final char c) {
+            skipWhitespace();
+            if (position >= text.length() || text.charAt(position) != c) {
+                throw new IllegalArgumentException("expected '" + c + "' at offset " + position);
+            }
+            position++;
+        } // expect
+
+        // consumes c if it's next
+        private boolean accept(final char c) {
+            skipWhitespace();
+            if (position < text.length() && text.charAt(position) == c) {
+                position++;
+                return true;
+            } else {
+                return false;
+            }
+        } // accept
+
+        private String readString() {
+            expect('"');
+            final StringBuilder builder = new StringBuilder();
+            while (text.charAt(position) != '"') {
+                char c = text.charAt(position++);
+                if (c == '\\') {
+                    c = text.charAt(position++);
+                    switch (c) {
+                    case 'n': c = '\n'; break;
+                    case 't': c = '\t'; break;
+                    case 'r': c = '\r'; break;
+                    case 'b': c = '\b'; break;
+                    case 'f': c = '\f'; break;
+                    case 'u':
+                        c = (char)Integer.parseInt(text.substring(position, position + 4), 16);
+                        position += 4;
+                        break;
+                    default: // \" \\ \/
+                        break;
+                    }
+                }
+                builder.append(c);
+            }
+            position++;
+            return builder.toString();
+        } // readString
+
+        private Object readValue() {
+            skipWhitespace();
+            final char c = text.charAt(position);
+            if (c == '{') {
+                final Map<String, Object> object = new LinkedHashMap<String, Object>();
+                expect('{');
+                if (!accept('}')) {
+                    do {
+                        final String name = readString();
+                        expect(':');
+                        object.put(name, readValue());
+                    } while (accept(','));
+                    expect('}');
+                }
+                return object;
+            } else if (c == '[') {
+                final List<Object> array = new ArrayList<Object>();
+                expect('[');
+                if (!accept(']')) {
+                    do {
+                        array.add(readValue());
+                    } while (accept(','));
+                    expect(']');
+                }
+                return array;
+            } else if (c == '"') {
+                return readString();
+            } else if (text.startsWith("true", position)) {
+                position += 4;
+                return Boolean.TRUE;
+            } else if (text.startsWith("false", position)) {
+                position += 5;
+                return Boolean.FALSE;
+            } else if (text.startsWith("null", position)) {
+                position += 4;
+                return null;
+            } else if (text.startsWith("NaN", position)) {
+                position += 3;
+                return Double.valueOf(Double.NaN);
+            } else {
+                final int start = position;
+                while (position < text.length() && "+-.eE0123456789".indexOf(text.charAt(position)) >= 0) {
+                    position++;
+                }
+                return Double.valueOf(text.substring(start, position));
+            }
+        } // readValue
+    } // JsonReader
+    // ---END JSON---
+
+    @SuppressWarnings("unchecked")
+    public static List<Result> parseResults(final String json) {
+        final List<Result> results = new ArrayList<Result>();
+        for (final Object element : (List<Object>)new JsonReader(json).readValue()) {
+            final Map<String, Object> run = (Map<String, Object>)element;
+            final Map<String, String> params = new TreeMap<String, String>();
+            final Map<String, Object> rawParams = (Map<String, Object>)run.get("params");
+            if (rawParams != null) {
+                for (final Map.Entry<String, Object> param : rawParams.entrySet()) {
+                    params.put(param.getKey(), String.valueOf(param.getValue()));
+                }
+            }
+            final Map<String, Object> metric = (Map<String, Object>)run.get("primaryMetric");
+            // JMH writes scores it has no value for as the string "NaN"
+            final Object score = metric.get("score");
+            results.add(new Result((String)run.get("benchmark"),
+                                   params,
+                                   (score instanceof Number) ?
+                                   ((Number)score).doubleValue() :
+                                   Double.parseDouble(String.valueOf(score)),
+                                   (String)metric.get("scoreUnit")));
+        }
+        return results;
+    } // parseResults
+
+    // "-" if there's nothing to compare against
+    public static String delta(final double score, final Result base) {
+        if (base == null || base.score == 0) {
+            return "-";
+        } else {
+            return String.format("%+.1f%%", (score - base.score) / base.score * 100);
+        }
+    } // delta
+
+    // baseline may be null
+    public static List<String> report(final List<Result> results, final List<Result> baseline) {
+        final Map<String, Result> baselineByKey = new TreeMap<String, Result>();
+        if (baseline != null) {
+            for (final Result result : baseline) {
+                baselineByKey.put(result.key(null), result);
+            }
+        }
+
+        int keyWidth = "benchmark".length();
+        for (final Result result : results) {
+            keyWidth = Math.max(keyWidth, result.key(null).length());
+        }
+        final List<String> lines = new ArrayList<String>();
+        lines.add(String.format("%-" + keyWidth + "s %14s %-8s %13s %13s %13s",
+                                "benchmark", "score", "unit", "vs reference", "vs none", "vs baseline"));
+        for (final Result result : results) {
+            Result reference = null;
+            Result none = null;
+            if (result.params.containsKey(COMPILATION)) {
+                final String group = result.key(COMPILATION);
+                for (final Result other : results) {
+                    if (other.params.containsKey(COMPILATION) && other.key(COMPILATION).equals(group)) {
+                        if (other.params.get(COMPILATION).equals(GeneratedCodeBenchmark.REFERENCE)) {
+                            reference = other;
+                        } else if (other.params.get(COMPILATION).equals(GeneratedCodeBenchmark.NONE)) {
+                            none = other;
+                        }
+                    }
+                }
+            }
+            lines.add(String.format("%-" + keyWidth + "s %14.3f %-8s %13s %13s %13s",
+                                    result.key(null),
+                                    result.score,
+                                    result.unit,
+                                    (reference == result) ? "-" : delta(result.score, reference),
+                                    (none == result) ? "-" : delta(result.score, none),
+                                    delta(result.score, baselineByKey.get(result.key(null)))));
+        }
+        return lines;
+    } // report
+
+    private static List<Result> readResults(final String path) throws IOException {
+        return parseResults(new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8));
+    } // readResults
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: BenchmarkReport results.json [baseline.json]");
+            System.exit(1);
+        }
+        final List<Result> baseline = (args.length == 2) ? readResults(args[1]) : null;
+        for (final String line : report(readResults(args[0]), baseline)) {
+            System.out.println(line);
+        }
+    } // main
+} // BenchmarkReport
@@ -0,0 +1,73 @@
+package codegen_example.bench;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import java.util.List;
+
+public class BenchmarkReportTest {
+    // trimmed down from what JMH writes with -rf json
+    public static String resultsJson(final double reference,
+                                     final double none,
+                                     final double peephole) {
+        return ("[\n" +
+                result("reference", reference) + ",\n" +
+                result("none", none) + ",\n" +
+                result("peephole", peephole) + "\n" +
+                "]\n");
+    } // resultsJson
+
+    public static String result(final String compilation, final double score) {
+        return ("    {\n" +
+                "        \"jmhVersion\" : \"1.37\",\n" +
+                "        \"benchmark\" : \"codegen_example.bench.GeneratedCodeBenchmark.run\",\n" +
+                "        \"mode\" : \"avgt\",\n" +
+                "        \"threads\" : 1,\n" +
+                "        \"jvmArgs\" : [ ],\n" +
+                "        \"params\" : {\n" +
+                "            \"program\" : \"arithmetic\",\n" +
+                "            \"compilation\" : \"" + compilation + "\"\n" +
+                "        },\n" +
+                "        \"primaryMetric\" : {\n" +
+                "            \"score\" : " + score + ",\n" +
+                "            \"scoreError\" : \"NaN\",\n" +
+                "            \"scoreUnit\" : \"ns/op\",\n" +
+                "            \"rawData\" : [ [ " + score + " ] ]\n" +
+                "        },\n" +
+                "        \"secondaryMetrics\" : { }\n" +
+                "    }");
+    } // result
+
+    @Test
+    public void testParse() {
+        final List<BenchmarkReport.Result> results =
+            BenchmarkReport.parseResults(resultsJson(10, 12.5, 11));
+        assertEquals(3, results.size());
+        assertEquals(12.5, results.get(1).score, 0);
+        assertEquals("ns/op", results.get(1).unit);
+        assertEquals("GeneratedCodeBenchmark.run compilation=none program=arithmetic",
+                     results.get(1).key(null));
+        assertEquals("GeneratedCodeBenchmark.run program=arithmetic",
+                     results.get(1).key(BenchmarkReport.COMPILATION));
+    }
+
+    @Test
+    public void testDeltas() {
+        final List<String> lines =
+            BenchmarkReport.report(BenchmarkReport.parseResults(resultsJson(10, 12.5, 11)),
+                                   BenchmarkReport.parseResults(resultsJson(10, 10, 11)));
+        assertEquals(4, lines.size());
+        // none: 25% slower than reference, itself, 25% slower than baseline
+        assertTrue(lines.get(2), lines.get(2).matches(".*compilation=none.* \\+25\\.0% +- +\\+25\\.0%"));
+        // peephole: 10% slower than reference, 12% faster than none, unchanged
+        assertTrue(lines.get(3), lines.get(3).matches(".*compilation=peephole.* \\+10\\.0% +-12\\.0% +\\+0\\.0%"));
+    }
+
+    @Test
+    public void testNoBaseline() {
+        final List<String> lines =
+            BenchmarkReport.report(BenchmarkReport.parseResults(resultsJson(10, 12.5, 11)), null);
+        assertTrue(lines.get(1), lines.get(1).matches(".*compilation=reference.* - +\\+?-?[0-9.]*% +-"));
+    }
+} // BenchmarkReportTest
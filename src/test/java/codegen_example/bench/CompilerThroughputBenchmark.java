@@ -0,0 +1,60 @@
+package codegen_example.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import codegen_example.codegen.CodeGenerator;
+import codegen_example.codegen.CodeGeneratorException;
+import codegen_example.flat.FlatProgram;
+import codegen_example.flat.FlatProgramException;
+import codegen_example.syntax.Program;
+import codegen_example.testing.SamplePrograms;
+
+// Compiles programs back to back, as a compilation service would, either
+// with a fresh CodeGenerator each time or with one generator per thread
+// which is reset between programs.  The reused generator is also run on
+// the flat form of each program.  Run with "-prof gc" to compare
+// allocation rates (gc.alloc.rate.norm is bytes allocated per program).
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompilerThroughputBenchmark {
+    @Param({SamplePrograms.ARITHMETIC,
+            SamplePrograms.VARIABLES,
+            SamplePrograms.PRINT})
+    public String program;
+
+    private Program parsed;
+    private FlatProgram flat;
+    private CodeGenerator reused;
+
+    @Setup(Level.Trial)
+    public void setup() throws FlatProgramException {
+        parsed = SamplePrograms.programFor(program);
+        flat = FlatProgram.fromProgram(parsed);
+        reused = new CodeGenerator(GeneratedCodeBenchmark.CLASS_NAME,
+                                   GeneratedCodeBenchmark.METHOD_NAME);
+    } // setup
+
+    @Benchmark
+    public byte[] fresh() throws CodeGeneratorException {
+        return new CodeGenerator(GeneratedCodeBenchmark.CLASS_NAME,
+                                 GeneratedCodeBenchmark.METHOD_NAME).writeProgramToBytes(parsed);
+    } // fresh
+
+    @Benchmark
+    public byte[] reused() throws CodeGeneratorException {
+        reused.reset();
+        return reused.writeProgramToBytes(parsed);
+    } // reused
+
+    @Benchmark
+    public byte[] reusedFlat() throws CodeGeneratorException {
+        reused.reset();
+        return reused.writeFlatProgramToBytes(flat);
+    } // reusedFlat
+} // CompilerThroughputBenchmark
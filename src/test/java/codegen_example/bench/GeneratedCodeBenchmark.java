@@ -0,0 +1,104 @@
+package codegen_example.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import codegen_example.codegen.CodeGenerator;
+import codegen_example.codegen.CodeGeneratorException;
+import codegen_example.syntax.Program;
+import codegen_example.testing.GeneratedClassLoader;
+import codegen_example.testing.SamplePrograms;
+
+// Measures how fast the code produced by CodeGenerator runs, as opposed to
+// how fast CodeGenerator itself runs.
+//
+// Every program in SamplePrograms is run once per compilation setting.
+// The "reference" setting runs the hand-written Java equivalent instead,
+// so the gap between "reference" and any other setting is the cost of our
+// code generation; a regression shows up as that gap growing.
+//
+// Output is sent to a stream which discards everything, so print-heavy
+// programs measure formatting and the call into PrintStream, not the
+// terminal.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeneratedCodeBenchmark {
+    // ---BEGIN STATICS---
+    public static final String CLASS_NAME = "BenchCompiled";
+    public static final String METHOD_NAME = "compiledProgram";
+    public static final String REFERENCE = "reference";
+    public static final String NONE = "none";
+    public static final String PEEPHOLE = "peephole";
+    public static final String EVALUATED = "evaluated";
+    // ---END STATICS---
+
+    @Param({SamplePrograms.ARITHMETIC,
+            SamplePrograms.VARIABLES,
+            SamplePrograms.PRINT})
+    public String program;
+
+    @Param({REFERENCE, NONE, PEEPHOLE, EVALUATED})
+    public String compilation;
+
+    private MethodHandle entryPoint;
+    private PrintStream originalOut;
+
+    public static byte[] compile(final Program program, final String compilation)
+        throws CodeGeneratorException {
+        if (compilation.equals(NONE)) {
+            return new CodeGenerator(CLASS_NAME, METHOD_NAME).writeProgramToBytes(program);
+        } else if (compilation.equals(PEEPHOLE)) {
+            return new CodeGenerator(CLASS_NAME, METHOD_NAME, true).writeProgramToBytes(program);
+        } else if (compilation.equals(EVALUATED)) {
+            return new CodeGenerator(CLASS_NAME, METHOD_NAME).writeEvaluatedProgramToBytes(program);
+        } else {
+            throw new IllegalArgumentException("unknown compilation setting: " + compilation);
+        }
+    } // compile
+
+    public static MethodHandle entryPointFor(final String program, final String compilation)
+        throws CodeGeneratorException, ReflectiveOperationException {
+        if (compilation.equals(REFERENCE)) {
+            return MethodHandles.lookup().findStatic(ReferencePrograms.class,
+                                                     program,
+                                                     MethodType.methodType(void.class));
+        } else {
+            return GeneratedClassLoader.loadEntryPoint(CLASS_NAME,
+                                                       METHOD_NAME,
+                                                       compile(SamplePrograms.programFor(program),
+                                                               compilation));
+        }
+    } // entryPointFor
+
+    @Setup(Level.Trial)
+    public void setup() throws CodeGeneratorException, ReflectiveOperationException {
+        entryPoint = entryPointFor(program, compilation);
+        originalOut = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+                public void write(final int b) {}
+                public void write(final byte[] b, final int off, final int len) {}
+            }));
+    } // setup
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(originalOut);
+    } // tearDown
+
+    @Benchmark
+    public void run() throws Throwable {
+        entryPoint.invokeExact();
+    } // run
+} // GeneratedCodeBenchmark
@@ -0,0 +1,63 @@
+package codegen_example.bench;
+
+// Hand-written Java equivalents of the programs in SamplePrograms, each
+// named after the program it matches, so the generated code can be
+// compared against what javac would produce.
+public class ReferencePrograms {
+    public static void arithmetic() {
+        int a = 17;
+        int b = 42;
+        int c = (a * b) + (a - b);
+        int d = (c / 3) * (b + 1000);
+        int e = ((d - c) * (a + b)) / 7;
+        int f = (e + d) - (c * 2);
+        int g = ((f * f) / (a + 1)) - e;
+        int h = ((g + 123456) * (5 - a)) + (d / (b - 40));
+        System.out.println(h);
+    } // arithmetic
+
+    public static void variables() {
+        int x0 = 1;
+        int x1 = x0 + x0;
+        int x2 = x1 + x0;
+        int x3 = x2 + x1;
+        x0 = x3;
+        int x4 = x3 + x2;
+        x1 = x4;
+        int x5 = x4 + x3;
+        x2 = x5;
+        int x6 = x5 + x4;
+        x3 = x6;
+        int x7 = x6 + x5;
+        x0 = x7;
+        x1 = x0;
+        x2 = x1;
+        boolean flag = true;
+        boolean other = flag;
+        flag = false;
+        other = flag;
+        System.out.println(x2);
+        System.out.println(other);
+    } // variables
+
+    public static void print() {
+        int x = 0;
+        boolean b = true;
+        System.out.println(x);
+        System.out.println(b);
+        x = x + 1;
+        System.out.println(x);
+        System.out.println(x);
+        b = false;
+        System.out.println(b);
+        System.out.println(b);
+        x = x * 1000;
+        System.out.println(x);
+        System.out.println(b);
+        System.out.println(x);
+        x = x - 1;
+        System.out.println(x);
+        System.out.println(x);
+        System.out.println(b);
+    } // print
+} // ReferencePrograms
@@ -0,0 +1,64 @@
+package codegen_example.bench;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+import codegen_example.testing.SamplePrograms;
+
+import static codegen_example.testing.ProgramRun.outputOf;
+
+// The benchmarks are only meaningful if every compilation setting and the
+// hand-written reference actually do the same thing.
+public class ReferenceProgramsTest {
+    public static void assertMatchesReference(final String program,
+                                              final String compilation) throws Throwable {
+        assertEquals(outputOf(GeneratedCodeBenchmark.entryPointFor(program,
+                                                                   GeneratedCodeBenchmark.REFERENCE)),
+                     outputOf(GeneratedCodeBenchmark.entryPointFor(program, compilation)));
+    } // assertMatchesReference
+
+    @Test
+    public void testArithmetic() throws Throwable {
+        assertMatchesReference(SamplePrograms.ARITHMETIC, GeneratedCodeBenchmark.NONE);
+    }
+
+    @Test
+    public void testVariables() throws Throwable {
+        assertMatchesReference(SamplePrograms.VARIABLES, GeneratedCodeBenchmark.NONE);
+    }
+
+    @Test
+    public void testPrint() throws Throwable {
+        assertMatchesReference(SamplePrograms.PRINT, GeneratedCodeBenchmark.NONE);
+    }
+
+    @Test
+    public void testArithmeticPeephole() throws Throwable {
+        assertMatchesReference(SamplePrograms.ARITHMETIC, GeneratedCodeBenchmark.PEEPHOLE);
+    }
+
+    @Test
+    public void testVariablesPeephole() throws Throwable {
+        assertMatchesReference(SamplePrograms.VARIABLES, GeneratedCodeBenchmark.PEEPHOLE);
+    }
+
+    @Test
+    public void testPrintPeephole() throws Throwable {
+        assertMatchesReference(SamplePrograms.PRINT, GeneratedCodeBenchmark.PEEPHOLE);
+    }
+
+    @Test
+    public void testArithmeticEvaluated() throws Throwable {
+        assertMatchesReference(SamplePrograms.ARITHMETIC, GeneratedCodeBenchmark.EVALUATED);
+    }
+
+    @Test
+    public void testVariablesEvaluated() throws Throwable {
+        assertMatchesReference(SamplePrograms.VARIABLES, GeneratedCodeBenchmark.EVALUATED);
+    }
+
+    @Test
+    public void testPrintEvaluated() throws Throwable {
+        assertMatchesReference(SamplePrograms.PRINT, GeneratedCodeBenchmark.EVALUATED);
+    }
+} // ReferenceProgramsTest
@@ -0,0 +1,101 @@
+package codegen_example.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.Files;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import static org.objectweb.asm.Opcodes.V1_7;
+import static org.objectweb.asm.Opcodes.V17;
+
+import codegen_example.codegen.CodeGenerator;
+import codegen_example.codegen.CodeGeneratorException;
+import codegen_example.codegen.ProgramPackager;
+import codegen_example.testing.SamplePrograms;
+
+// Wall-clock time to launch a compiled program in a fresh JVM and wait for
+// it to finish, for each way of packaging it:
+// -classfile-noshare: as classfile, without even the JDK's own CDS archive
+// -classfile: the .class file on the classpath, as writeProgram leaves it
+// -jar: a runnable jar from ProgramPackager
+// -jar-cds: the same jar, launched with its AppCDS archive
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+    // ---BEGIN STATICS---
+    public static final String CLASSFILE_NO_SHARE = "classfile-noshare";
+    public static final String CLASSFILE = "classfile";
+    public static final String JAR = "jar";
+    public static final String JAR_CDS = "jar-cds";
+    // ---END STATICS---
+
+    @Param({CLASSFILE_NO_SHARE, CLASSFILE, JAR, JAR_CDS})
+    public String packaging;
+
+    @Param({"7", "17"})
+    public int javaVersion;
+
+    @Param({SamplePrograms.PRINT})
+    public String program;
+
+    private File directory;
+    private ProcessBuilder builder;
+
+    @Setup(Level.Trial)
+    public void setup()
+        throws CodeGeneratorException, IOException, InterruptedException {
+        directory = Files.createTempDirectory("startup").toFile();
+        final ProgramPackager packager = new ProgramPackager(directory);
+        final CodeGenerator generator =
+            new CodeGenerator(GeneratedCodeBenchmark.CLASS_NAME,
+                              GeneratedCodeBenchmark.METHOD_NAME,
+                              false,
+                              (javaVersion == 7) ? V1_7 : V17);
+        final byte[] bytes = generator.writeProgramToBytes(SamplePrograms.programFor(program));
+
+        final List<String> command;
+        if (packaging.equals(CLASSFILE_NO_SHARE) || packaging.equals(CLASSFILE)) {
+            Files.write(new File(directory, GeneratedCodeBenchmark.CLASS_NAME + ".class").toPath(),
+                        bytes);
+            command = List.of(packager.javaExecutable,
+                              packaging.equals(CLASSFILE) ? "-Xshare:auto" : "-Xshare:off",
+                              "-cp",
+                              directory.getPath(),
+                              GeneratedCodeBenchmark.CLASS_NAME);
+        } else if (packaging.equals(JAR)) {
+            packager.writeJar(GeneratedCodeBenchmark.CLASS_NAME, bytes);
+            command = packager.launchCommand(GeneratedCodeBenchmark.CLASS_NAME, null);
+        } else if (packaging.equals(JAR_CDS)) {
+            packager.writeJar(GeneratedCodeBenchmark.CLASS_NAME, bytes);
+            command = packager.launchCommand(GeneratedCodeBenchmark.CLASS_NAME,
+                                             packager.writeArchive(GeneratedCodeBenchmark.CLASS_NAME));
+        } else {
+            throw new IllegalArgumentException("unknown packaging: " + packaging);
+        }
+        builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+    } // setup
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (final File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    } // tearDown
+
+    @Benchmark
+    public int launch() throws IOException, InterruptedException {
+        return builder.start().waitFor();
+    } // launch
+} // StartupBenchmark
@@ -41,7 +41,11 @@ public class CodeGeneratorTest {
 
     public static String[] runTest(final Program program)
         throws CodeGeneratorException, IOException {
-        final CodeGenerator generator = new CodeGenerator(CLASS_NAME, METHOD_NAME);
+        return runTest(new CodeGenerator(CLASS_NAME, METHOD_NAME), program);
+    } // runTest
+
+    public static String[] runTest(final CodeGenerator generator, final Program program)
+        throws CodeGeneratorException, IOException {
         generator.writeProgram(program);
         final ProcessBuilder builder = new ProcessBuilder("java", CLASS_NAME);
         builder.redirectErrorStream(true);
@@ -126,6 +130,36 @@ public class CodeGeneratorTest {
         testPrintNum(Integer.MAX_VALUE);
     }
 
+    @Test
+    public void testPrintMinInt() throws CodeGeneratorException, IOException {
+        testPrintNum(Integer.MIN_VALUE);
+    }
+
+    @Test
+    public void testPrintMaxByte() throws CodeGeneratorException, IOException {
+        testPrintNum(Byte.MAX_VALUE);
+    }
+
+    @Test
+    public void testPrintMinByte() throws CodeGeneratorException, IOException {
+        testPrintNum(Byte.MIN_VALUE);
+    }
+
+    @Test
+    public void testPrintMaxShort() throws CodeGeneratorException, IOException {
+        testPrintNum(Short.MAX_VALUE);
+    }
+
+    @Test
+    public void testPrintMinShort() throws CodeGeneratorException, IOException {
+        testPrintNum(Short.MIN_VALUE);
+    }
+
+    @Test
+    public void testPrintJustOverShort() throws CodeGeneratorException, IOException {
+        testPrintNum(Short.MAX_VALUE + 1);
+    }
+
     @Test
     public void testPrintTrue() throws CodeGeneratorException, IOException {
         // boolean x = true;
@@ -254,4 +288,63 @@ public class CodeGeneratorTest {
                      "5",
                      "10");
     }
+
+    @Test
+    public void testReuseAfterReset() throws CodeGeneratorException, IOException {
+        // int x = 1; print(x);
+        // then, with the same generator:
+        // bool x = false; int y = 7; print(y); print(x);
+        final CodeGenerator generator = new CodeGenerator(CLASS_NAME, METHOD_NAME);
+        assertArrayEquals(new String[]{ "1" },
+                          runTest(generator,
+                                  makeProgram(new VariableDeclarationStmt(new IntType(),
+                                                                          new Variable("x"),
+                                                                          new IntegerLiteralExp(1)),
+                                              new PrintStmt(new Variable("x")))));
+        generator.reset();
+        assertArrayEquals(new String[]{ "7", "false" },
+                          runTest(generator,
+                                  makeProgram(new VariableDeclarationStmt(new BoolType(),
+                                                                          new Variable("x"),
+                                                                          new BooleanLiteralExp(false)),
+                                              new VariableDeclarationStmt(new IntType(),
+                                                                          new Variable("y"),
+                                                                          new IntegerLiteralExp(7)),
+                                              new PrintStmt(new Variable("y")),
+                                              new PrintStmt(new Variable("x")))));
+    }
+
+    // more variables than the symbol table starts out with, twice over,
+    // so it has to grow and then be reused at its grown size
+    @Test
+    public void testManyVariablesAfterReset() throws CodeGeneratorException, IOException {
+        // int x0 = 0; int x1 = x0 + 1; ... int x99 = x98 + 1; print(x99); print(x0);
+        final Stmt[] statements = new Stmt[102];
+        statements[0] = new VariableDeclarationStmt(new IntType(),
+                                                    new Variable("x0"),
+                                                    new IntegerLiteralExp(0));
+        for (int index = 1; index < 100; index++) {
+            statements[index] =
+                new VariableDeclarationStmt(new IntType(),
+                                            new Variable("x" + index),
+                                            new BinopExp(new VariableExp(new Variable("x" + (index - 1))),
+                                                         new PlusBOP(),
+                                                         new IntegerLiteralExp(1)));
+        }
+        statements[100] = new PrintStmt(new Variable("x99"));
+        statements[101] = new PrintStmt(new Variable("x0"));
+        final CodeGenerator generator = new CodeGenerator(CLASS_NAME, METHOD_NAME);
+        assertArrayEquals(new String[]{ "99", "0" },
+                          runTest(generator, makeProgram(statements)));
+        generator.reset();
+        assertArrayEquals(new String[]{ "99", "0" },
+                          runTest(generator, makeProgram(statements)));
+    }
+
+    @Test(expected = CodeGeneratorException.class)
+    public void testWriteWithoutReset() throws CodeGeneratorException {
+        final CodeGenerator generator = new CodeGenerator(CLASS_NAME, METHOD_NAME);
+        generator.writeProgramToBytes(makeProgram());
+        generator.writeProgramToBytes(makeProgram());
+    }
 } // CodeGeneratorTest
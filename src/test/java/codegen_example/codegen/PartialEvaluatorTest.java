@@ -0,0 +1,175 @@
+package codegen_example.codegen;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.objectweb.asm.Opcodes.*;
+
+import codegen_example.syntax.*;
+import codegen_example.testing.ProgramRun;
+
+import static codegen_example.testing.SamplePrograms.*;
+import static codegen_example.codegen.CodeGeneratorTest.CLASS_NAME;
+import static codegen_example.codegen.CodeGeneratorTest.METHOD_NAME;
+import static codegen_example.codegen.PeepholeOptimizerTest.opcodesOf;
+
+public class PartialEvaluatorTest {
+    // evaluated and normal compilation must print the same thing and throw
+    // the same thing; returns the evaluated compilation
+    public static byte[] assertSameBehavior(final Program program, final boolean peephole)
+        throws CodeGeneratorException, ReflectiveOperationException {
+        final byte[] normal =
+            new CodeGenerator(CLASS_NAME, METHOD_NAME).writeProgramToBytes(program);
+        final byte[] evaluated =
+            new CodeGenerator(CLASS_NAME, METHOD_NAME, peephole).writeEvaluatedProgramToBytes(program);
+        final ProgramRun expected = ProgramRun.run(CLASS_NAME, METHOD_NAME, normal);
+        final ProgramRun actual = ProgramRun.run(CLASS_NAME, METHOD_NAME, evaluated);
+        assertEquals(expected.output, actual.output);
+        assertEquals((expected.thrown == null) ? null : expected.thrown.getClass(),
+                     (actual.thrown == null) ? null : actual.thrown.getClass());
+        return evaluated;
+    } // assertSameBehavior
+
+    public static Program divideByZeroMidway() {
+        // int x = 3;
+        // print(x);
+        // int y = x - 3;
+        // bool b = true;
+        // print(b);
+        // int z = x / y;
+        // print(z);
+        return makeProgram(intDec("x", lit(3)),
+                           print("x"),
+                           intDec("y", minus(var("x"), lit(3))),
+                           boolDec("b", lit(true)),
+                           print("b"),
+                           intDec("z", div(var("x"), var("y"))),
+                           print("z"));
+    } // divideByZeroMidway
+
+    @Test
+    public void testEvaluatesEverything() {
+        final PartialEvaluator evaluator = new PartialEvaluator(print());
+        assertEquals(print().statements.size(), evaluator.staticStatements);
+        assertEquals("0\ntrue\n1\n1\nfalse\nfalse\n1000\nfalse\n1000\n999\n999\nfalse\n",
+                     evaluator.output);
+    }
+
+    @Test
+    public void testWrapsAround() {
+        final PartialEvaluator evaluator =
+            new PartialEvaluator(makeProgram(intDec("x", plus(lit(Integer.MAX_VALUE), lit(1))),
+                                             intDec("y", div(lit(Integer.MIN_VALUE), lit(-1))),
+                                             print("x"),
+                                             print("y")));
+        assertEquals(Integer.MIN_VALUE + "\n" + Integer.MIN_VALUE + "\n", evaluator.output);
+    }
+
+    @Test
+    public void testStopsAtDivisionByZero() {
+        final PartialEvaluator evaluator = new PartialEvaluator(divideByZeroMidway());
+        assertEquals(5, evaluator.staticStatements);
+        assertEquals("3\ntrue\n", evaluator.output);
+        assertEquals(0, evaluator.valueOf(new Variable("y")));
+    }
+
+    @Test
+    public void testStopsAtOddBool() {
+        // bool b = true + true;
+        final PartialEvaluator evaluator =
+            new PartialEvaluator(makeProgram(boolDec("b", plus(lit(true), lit(true))),
+                                             print("b")));
+        assertEquals(0, evaluator.staticStatements);
+    }
+
+    @Test
+    public void testStaticProgramPrintsConstant() throws CodeGeneratorException, ReflectiveOperationException {
+        final byte[] bytes = assertSameBehavior(arithmetic(), false);
+        assertArrayEquals(new int[]{ GETSTATIC, LDC, LDC, INVOKESTATIC,
+                                     INVOKEVIRTUAL, INVOKEVIRTUAL, RETURN },
+                          opcodesOf(bytes));
+    }
+
+    @Test
+    public void testCorpus() throws CodeGeneratorException, ReflectiveOperationException {
+        assertSameBehavior(arithmetic(), true);
+        assertSameBehavior(variables(), false);
+        assertSameBehavior(variables(), true);
+        assertSameBehavior(print(), false);
+    }
+
+    @Test
+    public void testEmptyProgram() throws CodeGeneratorException, ReflectiveOperationException {
+        assertArrayEquals(new int[]{ RETURN },
+                          opcodesOf(assertSameBehavior(makeProgram(), false)));
+    }
+
+    @Test
+    public void testDivisionByZeroThrowsAtSamePoint()
+        throws CodeGeneratorException, ReflectiveOperationException {
+        final ProgramRun run = ProgramRun.run(CLASS_NAME,
+                                              METHOD_NAME,
+                                              assertSameBehavior(divideByZeroMidway(), false));
+        assertEquals("3" + System.lineSeparator() + "true" + System.lineSeparator(), run.output);
+        assertTrue(run.thrown instanceof ArithmeticException);
+        assertSameBehavior(divideByZeroMidway(), true);
+    }
+
+    @Test
+    public void testOddBoolLeftToJvm() throws CodeGeneratorException, ReflectiveOperationException {
+        // int x = 5; print(x); bool b = true + true; print(b); print(x);
+        assertSameBehavior(makeProgram(intDec("x", lit(5)),
+                                       print("x"),
+                                       boolDec("b", plus(lit(true), lit(true))),
+                                       print("b"),
+                                       print("x")),
+                           false);
+    }
+
+    @Test
+    public void testLongOutput() throws CodeGeneratorException, ReflectiveOperationException {
+        // 6000 lines of 12 characters needs more than one string constant
+        final Stmt[] statements = new Stmt[6001];
+        statements[0] = intDec("x", lit(Integer.MIN_VALUE));
+        for (int index = 1; index < statements.length; index++) {
+            statements[index] = print("x");
+        }
+        assertSameBehavior(makeProgram(statements), false);
+    }
+
+    @Test
+    public void testUndeclaredStillAnError() {
+        try {
+            new CodeGenerator(CLASS_NAME, METHOD_NAME)
+                .writeEvaluatedProgramToBytes(makeProgram(intDec("x", lit(1)),
+                                                          print("x"),
+                                                          print("y")));
+            fail("expected CodeGeneratorException");
+        } catch (final CodeGeneratorException e) {
+            assertTrue(e.getMessage().contains("y"));
+        }
+    }
+
+    @Test
+    public void testWrittenClassRuns() throws CodeGeneratorException, IOException {
+        // same as CodeGeneratorTest.runTest, but through writeEvaluatedProgram
+        new CodeGenerator(CLASS_NAME, METHOD_NAME).writeEvaluatedProgram(print());
+        final ProcessBuilder builder = new ProcessBuilder("java", CLASS_NAME);
+        builder.redirectErrorStream(true);
+        final Process process = builder.start();
+        try {
+            assertArrayEquals(new String[]{ "0", "true", "1", "1", "false", "false",
+                                            "1000", "false", "1000", "999", "999", "false" },
+                              CodeGeneratorTest.readUntilClose(process.getInputStream()));
+        } finally {
+            process.getOutputStream().close();
+            new File(CLASS_NAME + ".class").delete();
+        }
+    }
+} // PartialEvaluatorTest
@@ -0,0 +1,233 @@
+package codegen_example.codegen;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import static org.objectweb.asm.Opcodes.*;
+
+import codegen_example.syntax.*;
+
+import static codegen_example.codegen.CodeGeneratorTest.CLASS_NAME;
+import static codegen_example.codegen.CodeGeneratorTest.METHOD_NAME;
+import static codegen_example.codegen.CodeGeneratorTest.makeProgram;
+import static codegen_example.testing.ProgramRun.outputOf;
+
+public class PeepholeOptimizerTest {
+    public static MethodNode compiledMethod(final byte[] bytes) {
+        final ClassNode classNode = new ClassNode();
+        new ClassReader(bytes).accept(classNode, 0);
+        for (final MethodNode method : classNode.methods) {
+            if (method.name.equals(METHOD_NAME)) {
+                return method;
+            }
+        }
+        throw new IllegalStateException("no compiled method");
+    } // compiledMethod
+
+    public static int[] opcodesOf(final byte[] bytes) {
+        final MethodNode method = compiledMethod(bytes);
+        final int[] opcodes = new int[PeepholeOptimizer.countInstructions(method.instructions)];
+        int index = 0;
+        for (final AbstractInsnNode insn : method.instructions.toArray()) {
+            if (insn.getOpcode() >= 0) {
+                opcodes[index++] = insn.getOpcode();
+            }
+        }
+        return opcodes;
+    } // opcodesOf
+
+    // checks that the optimized program behaves the same, and returns what
+    // the optimizer reported
+    public static PeepholeReport assertSameOutput(final Program program) throws Throwable {
+        final CodeGenerator generator = new CodeGenerator(CLASS_NAME, METHOD_NAME, true);
+        final byte[] optimized = generator.writeProgramToBytes(program);
+        final byte[] unoptimized = new CodeGenerator(CLASS_NAME, METHOD_NAME).writeProgramToBytes(program);
+        // runs in-process, since this compares two compilations of each program
+        assertEquals(outputOf(CLASS_NAME, METHOD_NAME, unoptimized),
+                     outputOf(CLASS_NAME, METHOD_NAME, optimized));
+        return generator.getPeepholeReport();
+    } // assertSameOutput
+
+    public static byte[] optimize(final Program program) throws CodeGeneratorException {
+        return new CodeGenerator(CLASS_NAME, METHOD_NAME, true).writeProgramToBytes(program);
+    } // optimize
+
+    @Test
+    public void testNoReportWithoutPeephole() throws CodeGeneratorException {
+        final CodeGenerator generator = new CodeGenerator(CLASS_NAME, METHOD_NAME);
+        generator.writeProgramToBytes(makeProgram());
+        assertEquals(null, generator.getPeepholeReport());
+    }
+
+    @Test
+    public void testDeclarationThenPrint() throws Throwable {
+        // int x = 5;
+        // print(x);
+        final Program program =
+            makeProgram(new VariableDeclarationStmt(new IntType(),
+                                                    new Variable("x"),
+                                                    new IntegerLiteralExp(5)),
+                        new PrintStmt(new Variable("x")));
+        assertArrayEquals(new int[]{ GETSTATIC, ICONST_5, INVOKEVIRTUAL, RETURN },
+                          opcodesOf(optimize(program)));
+        final PeepholeReport report = assertSameOutput(program);
+        assertEquals(6, report.instructionsBefore);
+        assertEquals(4, report.instructionsAfter);
+        assertEquals(2, report.eliminated());
+    }
+
+    @Test
+    public void testStoreThenLoad() throws Throwable {
+        // int x = 6;
+        // int y = x;
+        // print(y);
+        final Program program =
+            makeProgram(new VariableDeclarationStmt(new IntType(),
+                                                    new Variable("x"),
+                                                    new IntegerLiteralExp(6)),
+                        new VariableDeclarationStmt(new IntType(),
+                                                    new Variable("y"),
+                                                    new VariableExp(new Variable("x"))),
+                        new PrintStmt(new Variable("y")));
+        assertArrayEquals(new int[]{ GETSTATIC, BIPUSH, INVOKEVIRTUAL, RETURN },
+                          opcodesOf(optimize(program)));
+        assertEquals(4, assertSameOutput(program).eliminated());
+    }
+
+    @Test
+    public void testStoreThenLoadStillLive() throws Throwable {
+        // int x = 6;
+        // int y = x + 1;
+        // print(x);
+        // print(y);
+        final Program program =
+            makeProgram(new VariableDeclarationStmt(new IntType(),
+                                                    new Variable("x"),
+                                                    new IntegerLiteralExp(6)),
+                        new VariableDeclarationStmt(new IntType(),
+                                                    new Variable("y"),
+                                                    new BinopExp(new VariableExp(new Variable("x")),
+                                                                 new PlusBOP(),
+                                                                 new IntegerLiteralExp(1))),
+                        new PrintStmt(new Variable("x")),
+                        new PrintStmt(new Variable("y")));
+        assertSameOutput(program);
+    }
+
+    @Test
+    public void testSelfAssignment() throws Throwable {
+        // int x = 300;
+        // x = x;
+        // print(x);
+        final Program program =
+            makeProgram(new VariableDeclarationStmt(new IntType(),
+                                                    new Variable("x"),
+                                                    new IntegerLiteralExp(300)),
+                        new AssignStmt(new Variable("x"),
+                                       new VariableExp(new Variable("x"))),
+                        new PrintStmt(new Variable("x")));
+        assertArrayEquals(new int[]{ GETSTATIC, SIPUSH, INVOKEVIRTUAL, RETURN },
+                          opcodesOf(optimize(program)));
+        assertSameOutput(program);
+    }
+
+    // each pass used to restart after every match, which took seconds here
+    @Test(timeout = 10000)
+    public void testLongChainOfAssignments() throws Throwable {
+        // int x = 0;
+        // x = x + 1; ...4000 times
+        // print(x);
+        final Stmt[] statements = new Stmt[4002];
+        statements[0] = new VariableDeclarationStmt(new IntType(),
+                                                    new Variable("x"),
+                                                    new IntegerLiteralExp(0));
+        for (int index = 1; index <= 4000; index++) {
+            statements[index] = new AssignStmt(new Variable("x"),
+                                               new BinopExp(new VariableExp(new Variable("x")),
+                                                            new PlusBOP(),
+                                                            new IntegerLiteralExp(1)));
+        }
+        statements[4001] = new PrintStmt(new Variable("x"));
+        // every store and load of x but the first load is gone
+        final PeepholeReport report = assertSameOutput(makeProgram(statements));
+        assertEquals(16006, report.instructionsBefore);
+        assertEquals(8004, report.instructionsAfter);
+    }
+
+    @Test
+    public void testManyPrintsKeepStackSmall() throws Throwable {
+        // int x = 0;
+        // print(x); ...1000 times
+        final Stmt[] statements = new Stmt[1001];
+        statements[0] = new VariableDeclarationStmt(new IntType(),
+                                                    new Variable("x"),
+                                                    new IntegerLiteralExp(0));
+        for (int index = 1; index < statements.length; index++) {
+            statements[index] = new PrintStmt(new Variable("x"));
+        }
+        final Program program = makeProgram(statements);
+        // out, its spare copy, and x with the copy made while storing it;
+        // one more print must not need another slot
+        assertTrue(compiledMethod(optimize(program)).maxStack <= 4);
+        assertSameOutput(program);
+    }
+
+    @Test
+    public void testConsecutivePrints() throws Throwable {
+        // int x = 7;
+        // bool b = true;
+        // print(x);
+        // print(b);
+        // print(x);
+        final Program program =
+            makeProgram(new VariableDeclarationStmt(new IntType(),
+                                                    new Variable("x"),
+                                                    new IntegerLiteralExp(7)),
+                        new VariableDeclarationStmt(new BoolType(),
+                                                    new Variable("b"),
+                                                    new BooleanLiteralExp(true)),
+                        new PrintStmt(new Variable("x")),
+                        new PrintStmt(new Variable("b")),
+                        new PrintStmt(new Variable("x")));
+        int getStatics = 0;
+        for (final int opcode : opcodesOf(optimize(program))) {
+            if (opcode == GETSTATIC) {
+                getStatics++;
+            }
+        }
+        assertEquals(1, getStatics);
+        // out, its one spare copy, and the value being printed
+        assertEquals(3, compiledMethod(optimize(program)).maxStack);
+        assertSameOutput(program);
+    }
+
+    @Test
+    public void testUnusedDeclarationRemoved() throws Throwable {
+        // int x = 1 + 2;
+        final Program program =
+            makeProgram(new VariableDeclarationStmt(new IntType(),
+                                                    new Variable("x"),
+                                                    new BinopExp(new IntegerLiteralExp(1),
+                                                                 new PlusBOP(),
+                                                                 new IntegerLiteralExp(2))));
+        assertArrayEquals(new int[]{ RETURN }, opcodesOf(optimize(program)));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void testUnusedDivisionByZeroStillThrows() throws Throwable {
+        // int x = 1 / 0;
+        final Program program =
+            makeProgram(new VariableDeclarationStmt(new IntType(),
+                                                    new Variable("x"),
+                                                    new BinopExp(new IntegerLiteralExp(1),
+                                                                 new DivBOP(),
+                                                                 new IntegerLiteralExp(0))));
+        outputOf(CLASS_NAME, METHOD_NAME, optimize(program));
+    }
+} // PeepholeOptimizerTest
@@ -0,0 +1,136 @@
+package codegen_example.codegen;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.List;
+
+import static org.objectweb.asm.Opcodes.V1_7;
+import static org.objectweb.asm.Opcodes.V17;
+import static org.objectweb.asm.Opcodes.V21;
+
+import codegen_example.syntax.*;
+
+import static codegen_example.codegen.CodeGeneratorTest.CLASS_NAME;
+import static codegen_example.codegen.CodeGeneratorTest.METHOD_NAME;
+import static codegen_example.codegen.CodeGeneratorTest.makeProgram;
+import static codegen_example.codegen.CodeGeneratorTest.readUntilClose;
+
+public class ProgramPackagerTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    public static Program printSeven() {
+        // int x = 7;
+        // print(x);
+        return makeProgram(new VariableDeclarationStmt(new IntType(),
+                                                       new Variable("x"),
+                                                       new IntegerLiteralExp(7)),
+                           new PrintStmt(new Variable("x")));
+    } // printSeven
+
+    public static String[] run(final List<String> command) throws IOException {
+        final ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        final Process process = builder.start();
+        process.getOutputStream().close();
+        return readUntilClose(process.getInputStream());
+    } // run
+
+    public static int majorVersion(final byte[] classBytes) {
+        return ProgramPackager.releaseFor(classBytes) + ProgramPackager.RELEASE_OFFSET;
+    } // majorVersion
+
+    @Test
+    public void testDefaultClassVersion() throws CodeGeneratorException {
+        assertEquals(V1_7,
+                     majorVersion(new CodeGenerator(CLASS_NAME, METHOD_NAME)
+                                  .writeProgramToBytes(printSeven())));
+    }
+
+    @Test
+    public void testModernClassVersion() throws CodeGeneratorException {
+        assertEquals(V17,
+                     majorVersion(new CodeGenerator(CLASS_NAME, METHOD_NAME, false, V17)
+                                  .writeProgramToBytes(printSeven())));
+    }
+
+    @Test
+    public void testRunnableJar() throws CodeGeneratorException, IOException, InterruptedException {
+        final ProgramPackager packager = new ProgramPackager(folder.getRoot());
+        final File jar = packager.writeJar(new CodeGenerator(CLASS_NAME, METHOD_NAME, false, V17),
+                                           printSeven());
+        assertTrue(jar.isFile());
+        assertArrayEquals(new String[]{ "7" },
+                          run(packager.launchCommand(CLASS_NAME, null)));
+    }
+
+    @Test
+    public void testParseRelease() {
+        assertEquals(17, ProgramPackager.parseRelease("openjdk version \"17.0.9\" 2023-10-17\n"));
+        assertEquals(21, ProgramPackager.parseRelease("java version \"21\" 2023-09-19 LTS\n"));
+        assertEquals(8, ProgramPackager.parseRelease("openjdk version \"1.8.0_392\"\n"));
+        assertEquals(24, ProgramPackager.parseRelease("openjdk version \"24-ea\" 2025-03-18\n"));
+        assertEquals(-1, ProgramPackager.parseRelease("Error: could not create the Java Virtual Machine.\n"));
+    }
+
+    @Test
+    public void testJavaRelease() throws IOException, InterruptedException {
+        assertEquals(Runtime.version().feature(),
+                     new ProgramPackager(folder.getRoot()).javaRelease());
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingJavaExecutable() throws IOException, InterruptedException {
+        new ProgramPackager(folder.getRoot(),
+                            new File(folder.getRoot(), "no-such-java").getPath()).supportsArchives();
+    }
+
+    @Test(expected = IOException.class)
+    public void testClassTooNewForJava()
+        throws CodeGeneratorException, IOException, InterruptedException {
+        final ProgramPackager packager = new ProgramPackager(folder.getRoot());
+        assumeTrue(packager.javaRelease() < 21);
+        packager.writeJar(new CodeGenerator(CLASS_NAME, METHOD_NAME, false, V21), printSeven());
+    }
+
+    @Test
+    public void testArchiveOfUnloadableJar()
+        throws CodeGeneratorException, IOException, InterruptedException {
+        final ProgramPackager packager = new ProgramPackager(folder.getRoot());
+        assumeTrue(packager.supportsArchives());
+        // the jar's main class is Missing, but the class inside is CLASS_NAME
+        packager.writeJar("Missing",
+                          new CodeGenerator(CLASS_NAME, METHOD_NAME, false, V17)
+                          .writeProgramToBytes(printSeven()));
+        try {
+            packager.writeArchive("Missing");
+            fail("expected IOException");
+        } catch (final IOException e) {
+            assertFalse(packager.archiveFor("Missing").exists());
+        }
+    }
+
+    @Test
+    public void testArchive() throws CodeGeneratorException, IOException, InterruptedException {
+        final ProgramPackager packager = new ProgramPackager(folder.getRoot());
+        assumeTrue(packager.supportsArchives());
+        packager.writeJar(new CodeGenerator(CLASS_NAME, METHOD_NAME, true, V17), printSeven());
+        final File archive = packager.writeArchive(CLASS_NAME);
+        assertTrue(archive.isFile());
+        // -Xshare:on makes the JVM fail rather than quietly ignore a bad archive
+        final List<String> command = packager.launchCommand(CLASS_NAME, archive);
+        command.add(command.indexOf("-jar"), "-Xshare:on");
+        assertArrayEquals(new String[]{ "7" }, run(command));
+    }
+} // ProgramPackagerTest
@@ -0,0 +1,257 @@
+package codegen_example.flat;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import java.util.List;
+import java.util.ArrayList;
+
+import codegen_example.codegen.CodeGenerator;
+import codegen_example.codegen.CodeGeneratorException;
+import codegen_example.syntax.*;
+import codegen_example.testing.SamplePrograms;
+
+import static codegen_example.testing.SamplePrograms.*;
+import static codegen_example.codegen.CodeGeneratorTest.CLASS_NAME;
+import static codegen_example.codegen.CodeGeneratorTest.METHOD_NAME;
+
+public class FlatProgramTest {
+    public static final String[] CORPUS = new String[]{
+        SamplePrograms.ARITHMETIC,
+        SamplePrograms.VARIABLES,
+        SamplePrograms.PRINT
+    };
+
+    // Program has no equals, but toString on statements is unambiguous
+    // since binops are fully parenthesized
+    public static List<String> statementStrings(final Program program) {
+        final List<String> result = new ArrayList<String>();
+        for (final Stmt statement : program.statements) {
+            result.add(statement.toString());
+        }
+        return result;
+    } // statementStrings
+
+    public static FlatProgram roundTripBytes(final FlatProgram program)
+        throws FlatProgramException, IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        program.write(output);
+        return FlatProgram.read(new ByteArrayInputStream(output.toByteArray()));
+    } // roundTripBytes
+
+    @Test
+    public void testFlattenExample() throws FlatProgramException {
+        // int x = 1 + y; print(x);
+        final FlatProgram flat =
+            FlatProgram.fromProgram(makeProgram(intDec("x", plus(lit(1), var("y"))),
+                                                print("x")));
+        assertArrayEquals(new int[]{ FlatProgram.INT_LITERAL,
+                                     FlatProgram.VARIABLE,
+                                     FlatProgram.PLUS,
+                                     FlatProgram.DECLARE_INT,
+                                     FlatProgram.PRINT },
+                          flat.opcodes);
+        assertArrayEquals(new int[]{ 1, 0, 0, 1, 1 }, flat.operands);
+        assertArrayEquals(new String[]{ "y", "x" }, flat.names);
+    }
+
+    @Test
+    public void testRoundTripCorpus() throws FlatProgramException {
+        for (final String name : CORPUS) {
+            final Program program = SamplePrograms.programFor(name);
+            assertEquals(statementStrings(program),
+                         statementStrings(FlatProgram.fromProgram(program).toProgram()));
+        }
+    }
+
+    @Test
+    public void testRoundTripLiterals() throws FlatProgramException {
+        final Program program = makeProgram(intDec("a", lit(Integer.MIN_VALUE)),
+                                            intDec("b", lit(Integer.MAX_VALUE)),
+                                            boolDec("c", lit(true)),
+                                            boolDec("d", lit(false)),
+                                            assign("a", div(minus(var("a"), var("b")),
+                                                            mult(var("b"), lit(-1)))));
+        assertEquals(statementStrings(program),
+                     statementStrings(FlatProgram.fromProgram(program).toProgram()));
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws FlatProgramException, IOException {
+        for (final String name : CORPUS) {
+            final FlatProgram flat = FlatProgram.fromProgram(SamplePrograms.programFor(name));
+            final FlatProgram read = roundTripBytes(flat);
+            assertArrayEquals(flat.opcodes, read.opcodes);
+            assertArrayEquals(flat.operands, read.operands);
+            assertArrayEquals(flat.names, read.names);
+        }
+    }
+
+    @Test
+    public void testEmptyProgram() throws FlatProgramException, IOException {
+        final FlatProgram flat = roundTripBytes(FlatProgram.fromProgram(makeProgram()));
+        assertEquals(0, flat.length());
+        assertEquals(0, flat.toProgram().statements.size());
+    }
+
+    @Test(expected = FlatProgramException.class)
+    public void testReadBadMagic() throws FlatProgramException, IOException {
+        FlatProgram.read(new ByteArrayInputStream(new byte[]{ 0, 0, 0, 0, 0, 1 }));
+    }
+
+    // header claiming the given counts, followed by nothing
+    public static byte[] truncatedHeader(final int nameCount, final int length) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(FlatProgram.MAGIC);
+        output.writeShort(FlatProgram.VERSION);
+        output.writeInt(nameCount);
+        if (nameCount == 0) {
+            output.writeInt(length);
+        }
+        output.flush();
+        return bytes.toByteArray();
+    } // truncatedHeader
+
+    @Test(expected = EOFException.class)
+    public void testReadHugeNameCount() throws FlatProgramException, IOException {
+        FlatProgram.read(new ByteArrayInputStream(truncatedHeader(Integer.MAX_VALUE, 0)));
+    }
+
+    @Test(expected = EOFException.class)
+    public void testReadHugeInstructionCount() throws FlatProgramException, IOException {
+        FlatProgram.read(new ByteArrayInputStream(truncatedHeader(0, Integer.MAX_VALUE)));
+    }
+
+    @Test(expected = FlatProgramException.class)
+    public void testReadRepeatedName() throws FlatProgramException, IOException {
+        // names x, x; int x = 1; int x = 2; print(x);
+        // each x would get its own slot if this were let through
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(FlatProgram.MAGIC);
+        output.writeShort(FlatProgram.VERSION);
+        output.writeInt(2);
+        output.writeUTF("x");
+        output.writeUTF("x");
+        output.writeInt(5);
+        output.writeByte(FlatProgram.INT_LITERAL);
+        output.writeInt(1);
+        output.writeByte(FlatProgram.DECLARE_INT);
+        output.writeInt(0);
+        output.writeByte(FlatProgram.INT_LITERAL);
+        output.writeInt(2);
+        output.writeByte(FlatProgram.DECLARE_INT);
+        output.writeInt(1);
+        output.writeByte(FlatProgram.PRINT);
+        output.writeInt(1);
+        output.flush();
+        FlatProgram.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructRepeatedName() {
+        new FlatProgram(new int[0], new int[0], new String[]{ "x", "x" });
+    }
+
+    @Test(expected = FlatProgramException.class)
+    public void testReadUnknownOpcode() throws FlatProgramException, IOException {
+        final byte[] header = truncatedHeader(0, 1);
+        final byte[] bytes = new byte[header.length + 1];
+        System.arraycopy(header, 0, bytes, 0, header.length);
+        bytes[header.length] = 99;
+        FlatProgram.read(new ByteArrayInputStream(bytes));
+    }
+
+    @Test(expected = FlatProgramException.class)
+    public void testWriteUnknownOpcode() throws FlatProgramException, IOException {
+        // 263 would come back as 7, DECLARE_INT, if cut down to a byte
+        new FlatProgram(new int[]{ FlatProgram.INT_LITERAL, 263 },
+                        new int[]{ 1, 0 },
+                        new String[0]).write(new ByteArrayOutputStream());
+    }
+
+    @Test(expected = FlatProgramException.class)
+    public void testMissingOperand() throws FlatProgramException {
+        new FlatProgram(new int[]{ FlatProgram.INT_LITERAL, FlatProgram.PLUS },
+                        new int[]{ 1, 0 },
+                        new String[0]).toProgram();
+    }
+
+    @Test(expected = FlatProgramException.class)
+    public void testLeftoverExpression() throws FlatProgramException {
+        new FlatProgram(new int[]{ FlatProgram.INT_LITERAL },
+                        new int[]{ 1 },
+                        new String[0]).toProgram();
+    }
+
+    @Test(expected = FlatProgramException.class)
+    public void testNameOutOfRange() throws FlatProgramException {
+        new FlatProgram(new int[]{ FlatProgram.PRINT },
+                        new int[]{ 3 },
+                        new String[]{ "x" }).toProgram();
+    }
+
+    // emitting from the flat form must give exactly the same class
+    @Test
+    public void testSameBytecodeAsTree() throws FlatProgramException, CodeGeneratorException {
+        for (final String name : CORPUS) {
+            final Program program = SamplePrograms.programFor(name);
+            assertArrayEquals(new CodeGenerator(CLASS_NAME, METHOD_NAME).writeProgramToBytes(program),
+                              new CodeGenerator(CLASS_NAME, METHOD_NAME)
+                              .writeFlatProgramToBytes(FlatProgram.fromProgram(program)));
+        }
+    }
+
+    @Test
+    public void testSameBytecodeReused() throws FlatProgramException, CodeGeneratorException {
+        // one generator for everything, alternating tree and flat
+        final CodeGenerator reused = new CodeGenerator(CLASS_NAME, METHOD_NAME);
+        for (final String name : CORPUS) {
+            final Program program = SamplePrograms.programFor(name);
+            final byte[] expected = new CodeGenerator(CLASS_NAME, METHOD_NAME).writeProgramToBytes(program);
+            reused.reset();
+            assertArrayEquals(expected, reused.writeFlatProgramToBytes(FlatProgram.fromProgram(program)));
+            reused.reset();
+            assertArrayEquals(expected, reused.writeProgramToBytes(program));
+        }
+    }
+
+    @Test
+    public void testSameBytecodeAsTreePeephole() throws FlatProgramException, CodeGeneratorException {
+        for (final String name : CORPUS) {
+            final Program program = SamplePrograms.programFor(name);
+            assertArrayEquals(new CodeGenerator(CLASS_NAME, METHOD_NAME, true).writeProgramToBytes(program),
+                              new CodeGenerator(CLASS_NAME, METHOD_NAME, true)
+                              .writeFlatProgramToBytes(FlatProgram.fromProgram(program)));
+        }
+    }
+
+    @Test(expected = CodeGeneratorException.class)
+    public void testEmitUndeclared() throws FlatProgramException, CodeGeneratorException {
+        new CodeGenerator(CLASS_NAME, METHOD_NAME)
+            .writeFlatProgramToBytes(FlatProgram.fromProgram(makeProgram(print("x"))));
+    }
+
+    @Test(expected = CodeGeneratorException.class)
+    public void testEmitRedeclared() throws FlatProgramException, CodeGeneratorException {
+        new CodeGenerator(CLASS_NAME, METHOD_NAME)
+            .writeFlatProgramToBytes(FlatProgram.fromProgram(makeProgram(intDec("x", lit(1)),
+                                                                         boolDec("x", lit(true)))));
+    }
+
+    @Test(expected = CodeGeneratorException.class)
+    public void testEmitMalformed() throws CodeGeneratorException {
+        new CodeGenerator(CLASS_NAME, METHOD_NAME)
+            .writeFlatProgramToBytes(new FlatProgram(new int[]{ FlatProgram.DECLARE_INT },
+                                                     new int[]{ 0 },
+                                                     new String[]{ "x" }));
+    }
+} // FlatProgramTest
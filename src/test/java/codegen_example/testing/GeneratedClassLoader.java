@@ -0,0 +1,30 @@
+package codegen_example.testing;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+// Loads a generated class straight from its bytes, so tests and benchmarks
+// never touch the filesystem.  One loader per class, so the same class
+// name can be reused.
+public class GeneratedClassLoader extends ClassLoader {
+    public GeneratedClassLoader() {
+        super(GeneratedClassLoader.class.getClassLoader());
+    }
+
+    public Class<?> define(final String className, final byte[] bytes) {
+        return defineClass(className, bytes, 0, bytes.length);
+    }
+
+    // handle to a static method with no params returning void, as
+    // produced by the code generator
+    public static MethodHandle loadEntryPoint(final String className,
+                                              final String methodName,
+                                              final byte[] bytes)
+        throws ReflectiveOperationException {
+        final Class<?> loaded = new GeneratedClassLoader().define(className, bytes);
+        return MethodHandles.lookup().findStatic(loaded,
+                                                 methodName,
+                                                 MethodType.methodType(void.class));
+    } // loadEntryPoint
+} // GeneratedClassLoader
@@ -0,0 +1,56 @@
+package codegen_example.testing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import java.lang.invoke.MethodHandle;
+
+// Runs a program's entry point in-process with System.out redirected to a
+// buffer, recording what it printed and whatever it threw, if anything.
+public class ProgramRun {
+    public final String output;
+    public final Throwable thrown;
+
+    public ProgramRun(final String output, final Throwable thrown) {
+        this.output = output;
+        this.thrown = thrown;
+    }
+
+    public static ProgramRun run(final MethodHandle entryPoint) {
+        final PrintStream originalOut = System.out;
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(buffer, true));
+        Throwable thrown = null;
+        try {
+            entryPoint.invokeExact();
+        } catch (final Throwable throwable) {
+            thrown = throwable;
+        } finally {
+            System.setOut(originalOut);
+        }
+        return new ProgramRun(buffer.toString(), thrown);
+    } // run
+
+    public static ProgramRun run(final String className,
+                                 final String methodName,
+                                 final byte[] bytes)
+        throws ReflectiveOperationException {
+        return run(GeneratedClassLoader.loadEntryPoint(className, methodName, bytes));
+    } // run
+
+    // for programs which aren't expected to throw
+    public static String outputOf(final MethodHandle entryPoint) throws Throwable {
+        final ProgramRun run = run(entryPoint);
+        if (run.thrown != null) {
+            throw run.thrown;
+        }
+        return run.output;
+    } // outputOf
+
+    public static String outputOf(final String className,
+                                  final String methodName,
+                                  final byte[] bytes)
+        throws Throwable {
+        return outputOf(GeneratedClassLoader.loadEntryPoint(className, methodName, bytes));
+    } // outputOf
+} // ProgramRun
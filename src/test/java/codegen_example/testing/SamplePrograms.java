@@ -0,0 +1,158 @@
+package codegen_example.testing;
+
+import java.util.List;
+import java.util.ArrayList;
+
+import codegen_example.syntax.*;
+
+// Helpers for building programs by hand, and a small corpus of programs
+// shared by the tests and the benchmarks.  The benchmarks have a
+// hand-written Java equivalent of each one in ReferencePrograms.
+public class SamplePrograms {
+    // ---BEGIN STATICS---
+    public static final String ARITHMETIC = "arithmetic";
+    public static final String VARIABLES = "variables";
+    public static final String PRINT = "print";
+    // ---END STATICS---
+
+    // ---BEGIN HELPERS---
+    public static Exp lit(final int value) {
+        return new IntegerLiteralExp(value);
+    }
+
+    public static Exp lit(final boolean value) {
+        return new BooleanLiteralExp(value);
+    }
+
+    public static Exp var(final String name) {
+        return new VariableExp(new Variable(name));
+    }
+
+    public static Exp plus(final Exp left, final Exp right) {
+        return new BinopExp(left, new PlusBOP(), right);
+    }
+
+    public static Exp minus(final Exp left, final Exp right) {
+        return new BinopExp(left, new MinusBOP(), right);
+    }
+
+    public static Exp mult(final Exp left, final Exp right) {
+        return new BinopExp(left, new MultBOP(), right);
+    }
+
+    public static Exp div(final Exp left, final Exp right) {
+        return new BinopExp(left, new DivBOP(), right);
+    }
+
+    public static Stmt intDec(final String name, final Exp exp) {
+        return new VariableDeclarationStmt(new IntType(), new Variable(name), exp);
+    }
+
+    public static Stmt boolDec(final String name, final Exp exp) {
+        return new VariableDeclarationStmt(new BoolType(), new Variable(name), exp);
+    }
+
+    public static Stmt assign(final String name, final Exp exp) {
+        return new AssignStmt(new Variable(name), exp);
+    }
+
+    public static Stmt print(final String name) {
+        return new PrintStmt(new Variable(name));
+    }
+
+    public static Program makeProgram(final Stmt... statements) {
+        final List<Stmt> list = new ArrayList<Stmt>();
+        for (final Stmt statement : statements) {
+            list.add(statement);
+        }
+        return new Program(list);
+    } // makeProgram
+    // ---END HELPERS---
+
+    public static Program programFor(final String name) {
+        if (name.equals(ARITHMETIC)) {
+            return arithmetic();
+        } else if (name.equals(VARIABLES)) {
+            return variables();
+        } else if (name.equals(PRINT)) {
+            return print();
+        } else {
+            throw new IllegalArgumentException("no such program: " + name);
+        }
+    } // programFor
+
+    // ---BEGIN ARITHMETIC---
+    // deeply nested expressions over a handful of variables
+    public static Program arithmetic() {
+        return makeProgram(intDec("a", lit(17)),
+                           intDec("b", lit(42)),
+                           intDec("c", plus(mult(var("a"), var("b")),
+                                            minus(var("a"), var("b")))),
+                           intDec("d", mult(div(var("c"), lit(3)),
+                                            plus(var("b"), lit(1000)))),
+                           intDec("e", div(mult(minus(var("d"), var("c")),
+                                                plus(var("a"), var("b"))),
+                                           lit(7))),
+                           intDec("f", minus(plus(var("e"), var("d")),
+                                             mult(var("c"), lit(2)))),
+                           intDec("g", minus(div(mult(var("f"), var("f")),
+                                                 plus(var("a"), lit(1))),
+                                             var("e"))),
+                           intDec("h", plus(mult(plus(var("g"), lit(123456)),
+                                                 minus(lit(5), var("a"))),
+                                            div(var("d"), minus(var("b"), lit(40))))),
+                           print("h"));
+    } // arithmetic
+    // ---END ARITHMETIC---
+
+    // ---BEGIN VARIABLES---
+    // many declarations and reassignments, each depending on the last
+    public static Program variables() {
+        return makeProgram(intDec("x0", lit(1)),
+                           intDec("x1", plus(var("x0"), var("x0"))),
+                           intDec("x2", plus(var("x1"), var("x0"))),
+                           intDec("x3", plus(var("x2"), var("x1"))),
+                           assign("x0", var("x3")),
+                           intDec("x4", plus(var("x3"), var("x2"))),
+                           assign("x1", var("x4")),
+                           intDec("x5", plus(var("x4"), var("x3"))),
+                           assign("x2", var("x5")),
+                           intDec("x6", plus(var("x5"), var("x4"))),
+                           assign("x3", var("x6")),
+                           intDec("x7", plus(var("x6"), var("x5"))),
+                           assign("x0", var("x7")),
+                           assign("x1", var("x0")),
+                           assign("x2", var("x1")),
+                           boolDec("flag", lit(true)),
+                           boolDec("other", var("flag")),
+                           assign("flag", lit(false)),
+                           assign("other", var("flag")),
+                           print("x2"),
+                           print("other"));
+    } // variables
+    // ---END VARIABLES---
+
+    // ---BEGIN PRINT---
+    // mostly prints, with a little work in between
+    public static Program print() {
+        return makeProgram(intDec("x", lit(0)),
+                           boolDec("b", lit(true)),
+                           print("x"),
+                           print("b"),
+                           assign("x", plus(var("x"), lit(1))),
+                           print("x"),
+                           print("x"),
+                           assign("b", lit(false)),
+                           print("b"),
+                           print("b"),
+                           assign("x", mult(var("x"), lit(1000))),
+                           print("x"),
+                           print("b"),
+                           print("x"),
+                           assign("x", minus(var("x"), lit(1))),
+                           print("x"),
+                           print("x"),
+                           print("b"));
+    } // print
+    // ---END PRINT---
+} // SamplePrograms